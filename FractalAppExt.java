@@ -4,12 +4,57 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.SoftReference;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
 import java.util.function.Consumer;
+import java.util.function.DoubleToIntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.function.LongConsumer;
 
 /* ============================================================
  *  FractalApp: UI shell around a Swing-free FractalGenerator
@@ -18,7 +63,28 @@ public class FractalAppExt {
 
     enum FractalType { TREE, MANDELBROT, JULIA }
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRender.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--recolor")) {
+            BatchRender.recolor(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--animate")) {
+            Animation.run(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--coordinate")) {
+            Distributed.coordinate(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--worker")) {
+            Distributed.work(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
         SwingUtilities.invokeLater(() -> {
             JFrame f = new JFrame("Fractal Playground — Tree / Mandelbrot / Julia");
             f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -41,17 +107,23 @@ public class FractalAppExt {
     /* ===================== UI: Canvas ===================== */
     static final class FractalPanel extends JPanel {
         private volatile BufferedImage image;                 
-        private final java.util.List<FractalGenerator.Line> lines =
-                Collections.synchronizedList(new ArrayList<>()); 
+        private volatile FractalGenerator.LineBuffer treeLines;
         private volatile FractalGenerator.FractalControl current;
+        private volatile FractalGenerator.FractalControl shown;
+        private volatile FractalGenerator.RenderFile.Params shownParams;
         private FractalType type = FractalType.TREE;
         private javax.swing.Timer timer;
 
         
         private int iterOrDepth = 500;
         private double juliaRe = -0.8, juliaIm = 0.156;
-        private double centerX = -0.5, centerY = 0.0, scale = 3.0;
+        private BigDecimal centerX = new BigDecimal("-0.5"), centerY = BigDecimal.ZERO;
+        private double scale = 3.0;
         private double treeAngleDeg = 22.0;
+        private volatile boolean overlay;
+
+        /** Screen area of the metrics overlay, repainted on every timer tick while it is on. */
+        private static final Rectangle OVERLAY = new Rectangle(8, 8, 330, 100);
 
         FractalPanel(int w, int h) {
             setPreferredSize(new Dimension(w, h));
@@ -66,62 +138,168 @@ public class FractalAppExt {
         void setType(FractalType t) { this.type = t; }
         void setIterOrDepth(int v) { this.iterOrDepth = v; }
         void setJulia(double re, double im) { this.juliaRe = re; this.juliaIm = im; }
-        void setView(double cx, double cy, double sc) { this.centerX = cx; this.centerY = cy; this.scale = sc; }
+        void setView(BigDecimal cx, BigDecimal cy, double sc) { this.centerX = cx; this.centerY = cy; this.scale = sc; }
         void setTree(double angleDeg, double scale) { this.treeAngleDeg = angleDeg; this.scale = scale; }
+        void setOverlay(boolean on) { this.overlay = on; repaint(OVERLAY); }
 
-        /** Corrected version — does NOT auto-generate depth=500 trees */
+        /**
+         * Starts a render with the current parameters. A render still running is
+         * pre-empted: the new one supersedes it in the generator's lane, so it
+         * stops on its own and only its timer has to go.
+         */
         void generate(Consumer<String> updateStatus) {
-            if (current != null) { cancelCurrent(updateStatus); return; }
+            if (timer != null) timer.stop();
 
             final int w = Math.max(1, getWidth());
             final int h = Math.max(1, getHeight());
 
             int value = Math.max(1, iterOrDepth);
 
-            current = FractalGenerator.generate(
+            final FractalType type = this.type;
+            final FractalGenerator.FractalControl handle = FractalGenerator.generate(
                 type,
                 w, h,
                 value,               
                 treeAngleDeg,
                 value,               
-                centerX, centerY, Math.max(1e-12, scale),
+                centerX, centerY, Math.max(FractalGenerator.MIN_SCALE, scale),
                 juliaRe, juliaIm
             );
 
-            
+            display(handle, new FractalGenerator.RenderFile.Params(type, w, h, value, treeAngleDeg,
+                    centerX, centerY, Math.max(FractalGenerator.MIN_SCALE, scale), juliaRe, juliaIm), updateStatus);
+        }
+
+        /** Writes the finished render on screen; returns false while there is none. */
+        boolean save(Path file, boolean compress) throws IOException {
+            FractalGenerator.FractalControl h = shown;
+            if (current != null || h == null) return false;
+            FractalGenerator.RenderFile.write(file, shownParams, h, compress);
+            return true;
+        }
+
+        /** Shows a saved render and takes over its parameters, which it returns. */
+        FractalGenerator.RenderFile.Params open(Path file, Consumer<String> updateStatus) throws IOException {
+            FractalGenerator.RenderFile saved = FractalGenerator.RenderFile.read(file);
+            FractalGenerator.RenderFile.Params p = saved.params();
+            if (timer != null) timer.stop();
+
+            type = p.type();
+            iterOrDepth = p.maxIter();
+            treeAngleDeg = p.angleDeg();
+            centerX = p.centerX();
+            centerY = p.centerY();
+            scale = p.scale();
+            juliaRe = p.juliaRe();
+            juliaIm = p.juliaIm();
+            display(FractalGenerator.load(saved), p, updateStatus);
+            return p;
+        }
+
+        /** Makes {@code handle} the render on screen and polls it until it finishes. */
+        private void display(FractalGenerator.FractalControl handle, FractalGenerator.RenderFile.Params params,
+                             Consumer<String> updateStatus)
+        {
+            final FractalType type = params.type();
+            final int w = params.w(), h = params.h();
+            current = handle;
+
             if (type == FractalType.TREE) {
-                image = null;
-                lines.clear();
-            } else {
-                lines.clear();
+                treeLines = handle.lines();
                 image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = image.createGraphics();
+                g.setColor(getBackground());
+                g.fillRect(0, 0, w, h);
+                g.dispose();
+            } else {
+                treeLines = null;
+                image = wrap(handle.pixels(), w, h);
             }
+            shown = handle;
+            shownParams = params;
 
             timer = new javax.swing.Timer(100, e -> {
-                List<Object> polled = FractalGenerator.update(current);
-
-                for (Object o : polled) {
-                    if (type == FractalType.TREE) {
-                        lines.add((FractalGenerator.Line)o);
-                    } else {
-                        FractalGenerator.RowInfo ri = (FractalGenerator.RowInfo)o;
-                        image.getRaster().setDataElements(0, ri.y, w, 1, ri.row);
-                    }
+                // read before draining so nothing published before termination is missed
+                boolean finished = handle.pool.isTerminated();
+
+                if (type == FractalType.TREE) {
+                    Graphics2D tg = treeGraphics();
+                    FractalGenerator.update(handle, r ->
+                            rasterize(tg, FractalGenerator.rangeFrom(r), FractalGenerator.rangeTo(r)));
+                    tg.dispose();
+                    repaint();
+                } else {
+                    // workers write straight into the image's own buffer
+                    FractalGenerator.update(handle, r -> repaint(
+                            FractalGenerator.rectX(r), FractalGenerator.rectY(r),
+                            FractalGenerator.rectW(r), FractalGenerator.rectH(r)));
                 }
 
-                SwingUtilities.invokeLater(this::repaint);
-
-                if (current.pool.isTerminated()) {
-                    SwingUtilities.invokeLater(() -> {
-                        updateStatus.accept(current.isCancelled.get() ? "Cancelled." : "Rendered.");
-                        ((javax.swing.Timer)e.getSource()).stop();
+                if (overlay) repaint(OVERLAY);
+
+                if (finished) {
+                    ((javax.swing.Timer)e.getSource()).stop();
+                    if (current == handle) {
+                        FractalGenerator.RenderMetrics.Snapshot m = handle.metrics().snapshot();
+                        FractalGenerator.Precision precision = handle.metrics().precision();
+                        updateStatus.accept(handle.dead() ? "Cancelled." : String.format(
+                                "Rendered in %d ms (first output after %d ms%s).",
+                                m.elapsedNanos() / 1_000_000, Math.max(0, m.firstRecordNanos()) / 1_000_000,
+                                (precision == null) ? "" : ", " + precision));
                         current = null;
-                    });
+                    }
                 }
             });
             timer.start();
         }
 
+        /** An RGB image backed by {@code pixels} itself rather than a copy. */
+        private static BufferedImage wrap(int[] pixels, int w, int h) {
+            DirectColorModel cm = new DirectColorModel(24, 0xFF0000, 0x00FF00, 0x0000FF);
+            WritableRaster raster = Raster.createPackedRaster(
+                    new DataBufferInt(pixels, pixels.length), w, h, w,
+                    cm.getMasks(), null);
+            return new BufferedImage(cm, raster, false, null);
+        }
+
+        private Graphics2D treeGraphics() {
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            return g;
+        }
+
+        /** Draws only the newly published slots into the backing image. */
+        private void rasterize(Graphics2D g, int from, int to) {
+            FractalGenerator.LineBuffer buf = treeLines;
+            BufferedImage img = image;
+            Color color = g.getColor();
+            for (int i = from; i < to; i++) {
+                // a subtree skipped as a duplicate leaves its slots empty
+                if (buf.argb[i] == 0) continue;
+                if (color.getRGB() != buf.argb[i]) {
+                    color = new Color(buf.argb[i], true);
+                    g.setColor(color);
+                }
+                g.drawLine(buf.x1[i], buf.y1[i], buf.x2[i], buf.y2[i]);
+
+                int sx = buf.x2[i], sy = buf.y2[i];
+                if (buf.splat != null && buf.splat[i] != 0
+                        && sx >= 0 && sy >= 0 && sx < img.getWidth() && sy < img.getHeight()) {
+                    img.setRGB(sx, sy, buf.splatOver(img.getRGB(sx, sy)));
+                }
+            }
+        }
+
+        /** Used by the next render; a finished set is recoloured from its iteration counts. */
+        void setPalette(FractalGenerator.Palette p) {
+            FractalGenerator.setPalette(p);
+            FractalGenerator.FractalControl h = shown;
+            if (current == null && h != null && h.iterations() != null) {
+                FractalGenerator.recolor(h, p);
+                repaint();
+            }
+        }
+
         void cancelCurrent(Consumer<String> updateStatus) {
             FractalGenerator.FractalControl h = current;
             if (h != null) {
@@ -132,20 +310,43 @@ public class FractalAppExt {
 
         @Override protected void paintComponent(Graphics g) {
             super.paintComponent(g);
-            Graphics2D g2 = (Graphics2D) g.create();
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            BufferedImage img = image;
+            if (img != null) {
+                g.drawImage(img, 0, 0, null);
+            }
+            FractalGenerator.FractalControl h = shown;
+            if (overlay && h != null) {
+                paintMetrics(g, h.metrics());
+            }
+        }
 
-            if (type == FractalType.TREE) {
-                synchronized (lines) {
-                    for (FractalGenerator.Line ln : lines) {
-                        g2.setColor(new Color(ln.argb, true));
-                        g2.drawLine(ln.x1, ln.y1, ln.x2, ln.y2);
-                    }
-                }
-            } else if (image != null) {
-                g2.drawImage(image, 0, 0, null);
+        private void paintMetrics(Graphics g, FractalGenerator.RenderMetrics metrics) {
+            FractalGenerator.RenderMetrics.Snapshot m = metrics.snapshot();
+            String unit = (metrics.type() == FractalType.TREE) ? "lines" : "px";
+
+            StringBuilder busy = new StringBuilder("busy ms:");
+            m.busyNanos().values().forEach(t -> busy.append(' ').append(t / 1_000_000));
+
+            String[] lines = {
+                    String.format("%s %.1f ms%s", m.finished() ? "done in" : "running", m.elapsedNanos() / 1e6,
+                            (metrics.precision() == null) ? "" : " in " + metrics.precision()),
+                    String.format("first output %s", (m.firstRecordNanos() < 0) ? "-"
+                            : String.format("%.1f ms", m.firstRecordNanos() / 1e6)),
+                    String.format("tasks %d / %d", m.tasksCompleted(), m.tasksSubmitted()),
+                    String.format("%d / %d %s, %.2f M%s/s", m.units(), m.totalUnits(), unit,
+                            m.unitsPerSecond() / 1e6, unit),
+                    String.format("queue high water %d", m.queueHighWater()),
+                    busy.toString()
+            };
+
+            g.setColor(new Color(0, 0, 0, 160));
+            g.fillRect(OVERLAY.x, OVERLAY.y, OVERLAY.width, OVERLAY.height);
+            g.setColor(Color.WHITE);
+            g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+            int lh = g.getFontMetrics().getHeight();
+            for (int i = 0; i < lines.length; i++) {
+                g.drawString(lines[i], OVERLAY.x + 6, OVERLAY.y + 4 + lh * (i + 1));
             }
-            g2.dispose();
         }
     }
 
@@ -159,8 +360,16 @@ public class FractalAppExt {
         private final JTextField scaleField = new JTextField("3.0", 3);
         private final JTextField centerX = new JTextField("-0.5", 3);
         private final JTextField centerY = new JTextField("0.0", 3);
+        private final JComboBox<FractalGenerator.Palette> paletteBox =
+                new JComboBox<>(FractalGenerator.Palette.BUILT_IN);
         private final JButton generateBtn = new JButton("Generate");
         private final JButton cancelBtn = new JButton("Cancel");
+        private final JButton saveBtn = new JButton("Save");
+        private final JButton openBtn = new JButton("Open");
+        private final JFileChooser chooser = new JFileChooser();
+        private final JCheckBox statsBox = new JCheckBox("Stats");
+        private final JCheckBox lodBox = new JCheckBox("LOD");
+        private final JCheckBox aaBox = new JCheckBox("AA");
         private final JLabel status = new JLabel(" ");
 
         private final FractalPanel canvas;
@@ -190,8 +399,17 @@ public class FractalAppExt {
             add(centerX, c); c.gridx++;
             add(centerY, c); c.gridx++;
 
+            add(new JLabel("Palette:"), c); c.gridx++;
+            add(paletteBox, c); c.gridx++;
+
+            add(lodBox, c); c.gridx++;
+            add(aaBox, c); c.gridx++;
+            add(statsBox, c); c.gridx++;
+
             c.gridx++; add(generateBtn, c); c.gridx++;
-            add(cancelBtn, c);
+            add(cancelBtn, c); c.gridx++;
+            add(saveBtn, c); c.gridx++;
+            add(openBtn, c);
 
             c.gridy = 1; c.gridx = 0; c.gridwidth = 12; c.fill = GridBagConstraints.HORIZONTAL;
             add(status, c);
@@ -204,10 +422,61 @@ public class FractalAppExt {
                 syncFieldVisibility(t);
             });
 
+            paletteBox.addActionListener(e ->
+                    canvas.setPalette((FractalGenerator.Palette) paletteBox.getSelectedItem()));
+
+            statsBox.addActionListener(e -> canvas.setOverlay(statsBox.isSelected()));
+            lodBox.setSelected(FractalGenerator.treeLod());
+            aaBox.setSelected(FractalGenerator.antialias() > 0);
+            aaBox.addActionListener(e -> FractalGenerator.setAntialias(
+                    aaBox.isSelected() ? FractalGenerator.AA_SAMPLES : 0));
+            lodBox.addActionListener(e -> FractalGenerator.setTreeLod(lodBox.isSelected()));
+
             generateBtn.addActionListener(e -> onGenerate());
+            // Enter in any field re-renders at once, pre-empting a render in progress
+            for (JTextField f : new JTextField[] { iterDepth, juliaRe, juliaIm, angleDeg, scaleField, centerX, centerY }) {
+                f.addActionListener(e -> onGenerate());
+            }
             cancelBtn.addActionListener(e -> {
                 canvas.cancelCurrent(s -> status.setText(s));
             });
+            saveBtn.addActionListener(e -> onSave());
+            openBtn.addActionListener(e -> onOpen());
+        }
+
+        private void onSave() {
+            if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            Path file = chooser.getSelectedFile().toPath();
+            try {
+                boolean compress = Boolean.getBoolean("fractal.snapshot.compress");
+                status.setText(canvas.save(file, compress) ? "Saved " + file.getFileName() + "."
+                        : "Nothing finished to save.");
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+
+        private void onOpen() {
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            try {
+                FractalGenerator.RenderFile.Params p =
+                        canvas.open(chooser.getSelectedFile().toPath(), status::setText);
+                // selecting the type resets the fields, so it goes first
+                typeBox.setSelectedItem(p.type());
+                iterDepth.setText(Integer.toString(p.maxIter()));
+                scaleField.setText(Double.toString(p.scale()));
+                if (p.type() == FractalType.TREE) {
+                    angleDeg.setText(Double.toString(p.angleDeg()));
+                } else {
+                    centerX.setText(p.centerX().toString());
+                    centerY.setText(p.centerY().toString());
+                    juliaRe.setText(Double.toString(p.juliaRe()));
+                    juliaIm.setText(Double.toString(p.juliaIm()));
+                }
+                status.setText("Loading…");
+            } catch (IOException ex) {
+                JOptionPane.showMessageDialog(this, ex.getMessage(), "Open Error", JOptionPane.ERROR_MESSAGE);
+            }
         }
 
         private void onGenerate() {
@@ -222,10 +491,11 @@ public class FractalAppExt {
                     canvas.setTree(ang, sc);
                 } else {
                     canvas.setIterOrDepth(Math.max(10, v));
-                    double cx = Double.parseDouble(centerX.getText().trim());
-                    double cy = Double.parseDouble(centerY.getText().trim());
+                    // centres stay exact so deep zooms can be entered digit by digit
+                    BigDecimal cx = new BigDecimal(centerX.getText().trim());
+                    BigDecimal cy = new BigDecimal(centerY.getText().trim());
                     double sc = Double.parseDouble(scaleField.getText().trim());
-                    canvas.setView(cx, cy, Math.max(1e-12, sc));
+                    canvas.setView(cx, cy, Math.max(FractalGenerator.MIN_SCALE, sc));
                     if (t == FractalType.JULIA) {
                         double re = Double.parseDouble(juliaRe.getText().trim());
                         double im = Double.parseDouble(juliaIm.getText().trim());
@@ -244,9 +514,12 @@ public class FractalAppExt {
 
         private void syncFieldVisibility(FractalType t) {
             boolean isTree = (t == FractalType.TREE);
+            paletteBox.setEnabled(!isTree);
             juliaRe.setEnabled(t == FractalType.JULIA);
             juliaIm.setEnabled(t == FractalType.JULIA);
             angleDeg.setEnabled(isTree);
+            lodBox.setEnabled(isTree);
+            aaBox.setEnabled(!isTree);
             centerX.setEnabled(!isTree);
             centerY.setEnabled(!isTree);
             centerX.setText(t == FractalType.MANDELBROT ? "-0.5" : "0.0");
@@ -255,211 +528,3321 @@ public class FractalAppExt {
         }
     }
 
-    /* ============================================================
-     *  FractalGenerator — CONCURRENT, UI-FREE FRACTAL ENGINE
-     * ============================================================ */
-    static final class FractalGenerator {
+    /* ===================== Headless batch render ===================== */
+    /**
+     * {@code FractalAppExt --batch [params.properties] [key=value ...]} renders a
+     * Mandelbrot/Julia frame without Swing into a binary PPM (P6) file. The
+     * frame is rendered in bands of whole tile rows and each band is written
+     * through its own memory mapping of the output file, so neither the image
+     * nor the file has to fit in the heap.
+     *
+     * <p>Keys: type, width, height, maxIter, centerX, centerY, scale, juliaRe,
+     * juliaIm, palette, aa (extra samples per edge pixel), out. Arguments after
+     * a parameter file override it.
+     */
+    static final class BatchRender {
+
+        /** Heap budget of one band: 4 bytes of colour plus 4 of smooth iteration per pixel. */
+        private static final long BAND_BYTES = Long.getLong("fractal.batch.bandMB", 64) << 20;
+
+        static void run(String[] args) throws IOException {
+            Properties p = parameters(args);
+
+            FractalType type = FractalType.valueOf(p.getProperty("type", "MANDELBROT").toUpperCase(Locale.ROOT));
+            int w = Integer.parseInt(p.getProperty("width", "1920"));
+            int h = Integer.parseInt(p.getProperty("height", "1080"));
+            int maxIter = Integer.parseInt(p.getProperty("maxIter", "500"));
+            BigDecimal cx = new BigDecimal(p.getProperty("centerX", type == FractalType.JULIA ? "0" : "-0.5"));
+            BigDecimal cy = new BigDecimal(p.getProperty("centerY", "0"));
+            double scale = Double.parseDouble(p.getProperty("scale", "3.0"));
+            double jr = Double.parseDouble(p.getProperty("juliaRe", "-0.8"));
+            double ji = Double.parseDouble(p.getProperty("juliaIm", "0.156"));
+            Path out = Path.of(p.getProperty("out", "fractal.ppm"));
+
+            check(type, w, h, scale);
+            configure(p);
+
+            int rows = (int) Math.min(Math.min(h, 0xFFFF), Math.max(1, BAND_BYTES / (8L * w)));
+            if (rows > FractalGenerator.TILE) rows -= rows % FractalGenerator.TILE;
+
+            byte[] header = ("P6\n" + w + " " + h + "\n255\n").getBytes(StandardCharsets.US_ASCII);
+            byte[] line = new byte[3 * w];
+            long start = System.nanoTime();
+
+            try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                ch.write(ByteBuffer.wrap(header), 0);
+
+                for (int top = 0; top < h; top += rows) {
+                    int n = Math.min(rows, h - top);
+                    FractalGenerator.FractalControl handle = FractalGenerator.generateBand(
+                            type, w, h, top, n, maxIter, cx, cy, scale, jr, ji);
+
+                    if (!await(handle)) return;
+
+                    MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE,
+                            header.length + 3L * w * top, 3L * w * n);
+                    int[] pixels = handle.pixels();
+                    for (int y = 0; y < n; y++) {
+                        rgb(pixels, y * w, w, line);
+                        map.put(line);
+                    }
+                    map.force();
 
-        private static volatile boolean slowMode = true;
+                    System.err.printf("rows %d-%d of %d (%.1fs, %s)%n",
+                            top, top + n, h, (System.nanoTime() - start) / 1e9, handle.metrics().precision());
+                }
+            }
+        }
 
-        public record Line(int x1, int y1, int x2, int y2, int argb) {}
-        public record RowInfo(int y, int[] row) {}
+        /**
+         * {@code --recolor in=file.frac [palette=...] [out=...]} writes a saved
+         * Mandelbrot/Julia render as a PPM in another palette. The iteration counts
+         * are read straight from the mapped file, so nothing is iterated and the
+         * frame never has to fit in the heap.
+         */
+        static void recolor(String[] args) throws IOException {
+            Properties p = parameters(args);
+            FractalGenerator.RenderFile file = FractalGenerator.RenderFile.read(
+                    Path.of(p.getProperty("in", "fractal.frac")));
+            FractalGenerator.RenderFile.Params params = file.params();
+            if (params.type() == FractalType.TREE) {
+                throw new IllegalArgumentException("recolouring covers MANDELBROT or JULIA only");
+            }
+            configure(p);
+
+            int w = params.w(), h = params.h();
+            int[] lut = FractalGenerator.palette().table(params.maxIter());
+            FloatBuffer mu = file.iterations();
+            byte[] header = ("P6\n" + w + " " + h + "\n255\n").getBytes(StandardCharsets.US_ASCII);
+            int[] row = new int[w];
+            byte[] line = new byte[3 * w];
+
+            try (FileChannel ch = FileChannel.open(Path.of(p.getProperty("out", "fractal.ppm")),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+            {
+                ch.write(ByteBuffer.wrap(header));
+                for (int y = 0; y < h; y++) {
+                    for (int x = 0; x < w; x++) row[x] = FractalGenerator.Palette.color(mu.get(), lut);
+                    rgb(row, 0, w, line);
+                    ByteBuffer b = ByteBuffer.wrap(line);
+                    while (b.hasRemaining()) ch.write(b);
+                }
+            }
+        }
 
-        public record FractalControl(
-                ExecutorService pool,
-                AtomicBoolean isCancelled,
-                BlockingQueue<Object> queue,
-                AtomicInteger tasks
-        ) {}
+        /** Parameter files and key=value arguments, later ones overriding earlier ones. */
+        static Properties parameters(String[] args) throws IOException {
+            Properties p = new Properties();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    try (Reader in = Files.newBufferedReader(Path.of(arg))) { p.load(in); }
+                } else {
+                    p.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+                }
+            }
+            return p;
+        }
+
+        static void check(FractalType type, int w, int h, double scale) {
+            if (type == FractalType.TREE) {
+                throw new IllegalArgumentException("headless rendering covers MANDELBROT or JULIA only");
+            }
+            // dirty rectangles pack x and width into 16 bits each
+            if (w < 2 || h < 2 || w > 0xFFFF) {
+                throw new IllegalArgumentException("width must be in [2, 65535] and height >= 2");
+            }
+            if (scale < FractalGenerator.MIN_SCALE) {
+                throw new IllegalArgumentException("scale below " + FractalGenerator.MIN_SCALE);
+            }
+        }
 
+        /** Palette from the parameters; no previews and no tile cache, since nobody watches. */
+        static void configure(Properties p) {
+            String name = p.getProperty("palette", "Rainbow");
+            FractalGenerator.Palette palette = Arrays.stream(FractalGenerator.Palette.BUILT_IN)
+                    .filter(q -> q.toString().equalsIgnoreCase(name))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("unknown palette " + name));
+
+            FractalGenerator.setPalette(palette);
+            FractalGenerator.setAntialias(Integer.parseInt(p.getProperty("aa", "0")));
+            FractalGenerator.setProgressive(false);
+            FractalGenerator.setTileCache(null);
+        }
 
-        public static List<Object> update(FractalControl handle) {
-            List<Object> drained = new ArrayList<>();
-            handle.queue.drainTo(drained);
+        /**
+         * Drains the ring (nothing displays the dirty rectangles, but producers
+         * must not stall) until the render has terminated; false if interrupted.
+         */
+        static boolean await(FractalGenerator.FractalControl handle) {
+            while (!handle.pool().isTerminated()) {
+                FractalGenerator.update(handle, r -> {});
+                try { handle.pool().awaitTermination(10, TimeUnit.MILLISECONDS); }
+                catch (InterruptedException e) { Thread.currentThread().interrupt(); return false; }
+            }
+            FractalGenerator.update(handle, r -> {});
+            return true;
+        }
 
-            if (handle.tasks.get() == 0 && !handle.pool.isShutdown()) {
-                handle.pool.shutdown();
+        /** Packs w pixels starting at {@code from} into 24-bit RGB. */
+        static void rgb(int[] pixels, int from, int w, byte[] line) {
+            for (int x = 0, i = from; x < w; x++, i++) {
+                int rgb = pixels[i];
+                line[3 * x] = (byte) (rgb >> 16);
+                line[3 * x + 1] = (byte) (rgb >> 8);
+                line[3 * x + 2] = (byte) rgb;
             }
-            return drained;
         }
+    }
 
-        public static FractalControl generate(
-                FractalType type,
-                int w, int h,
-                int depth, double angleDeg,
-                int maxIter,
-                double centerX, double centerY, double scale,
-                double juliaRe, double juliaIm)
-        {
-            BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
-            AtomicBoolean cancelled = new AtomicBoolean(false);
-            AtomicInteger tasks = new AtomicInteger(1);
+    /* ===================== Zoom animation ===================== */
+    /**
+     * {@code FractalAppExt --animate [params.properties] [key=value ...]} renders
+     * a zoom from (centerX, centerY, scale) to (endCenterX, endCenterY, endScale)
+     * over {@code frames} frames. The scale shrinks geometrically and the centre
+     * approaches the end centre in step with it, so the target stays put on
+     * screen. {@code inFlight} frames render concurrently, each in its own lane;
+     * each new frame is seeded by reprojecting the newest finished one
+     * ({@code reuse} is the tolerance in pixels, 0 turns it off). Frames are
+     * written in order, as numbered PPM files in the {@code out} directory or,
+     * with {@code format=raw}, appended to one rgb24 stream for a video encoder.
+     */
+    static final class Animation {
+
+        /** A frame handed to the scheduler, with the view it was started for. */
+        private record Frame(int index, FractalGenerator.FractalControl handle, FractalGenerator.Seed seed,
+                             BigDecimal centerX, BigDecimal centerY, double scale) {}
+
+        static void run(String[] args) throws IOException {
+            Properties p = BatchRender.parameters(args);
+
+            FractalType type = FractalType.valueOf(p.getProperty("type", "MANDELBROT").toUpperCase(Locale.ROOT));
+            int w = Integer.parseInt(p.getProperty("width", "1280"));
+            int h = Integer.parseInt(p.getProperty("height", "720"));
+            int maxIter = Integer.parseInt(p.getProperty("maxIter", "1000"));
+            BigDecimal cx0 = new BigDecimal(p.getProperty("centerX", type == FractalType.JULIA ? "0" : "-0.5"));
+            BigDecimal cy0 = new BigDecimal(p.getProperty("centerY", "0"));
+            BigDecimal cx1 = new BigDecimal(p.getProperty("endCenterX", cx0.toString()));
+            BigDecimal cy1 = new BigDecimal(p.getProperty("endCenterY", cy0.toString()));
+            double scale0 = Double.parseDouble(p.getProperty("scale", "3.0"));
+            double scale1 = Double.parseDouble(p.getProperty("endScale", String.valueOf(scale0 * 1e-3)));
+            double jr = Double.parseDouble(p.getProperty("juliaRe", "-0.8"));
+            double ji = Double.parseDouble(p.getProperty("juliaIm", "0.156"));
+            int frames = Integer.parseInt(p.getProperty("frames", "300"));
+            int inFlight = Math.max(1, Integer.parseInt(p.getProperty("inFlight", "3")));
+            double reuse = Double.parseDouble(p.getProperty("reuse", "0.25"));
+            boolean raw = p.getProperty("format", "ppm").equalsIgnoreCase("raw");
+            Path out = Path.of(p.getProperty("out", raw ? "frames.rgb" : "frames"));
+
+            BatchRender.check(type, w, h, Math.min(scale0, scale1));
+            if (frames < 1) throw new IllegalArgumentException("frames must be positive");
+            BatchRender.configure(p);
+
+            byte[] header = ("P6\n" + w + " " + h + "\n255\n").getBytes(StandardCharsets.US_ASCII);
+            byte[] line = new byte[3 * w];
+            ArrayDeque<Frame> pending = new ArrayDeque<>();
+            Frame done = null;
+            long reused = 0;
+            long start = System.nanoTime();
+
+            if (!raw) Files.createDirectories(out);
+            try (FileChannel stream = raw ? FileChannel.open(out, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING) : null)
+            {
+                for (int next = 0; next < frames || !pending.isEmpty(); ) {
+                    while (pending.size() < inFlight && next < frames) {
+                        double t = (frames == 1) ? 0 : next / (double) (frames - 1);
+                        double scale = scale0 * Math.pow(scale1 / scale0, t);
+                        // the centre closes in as the view shrinks, so the end centre stays fixed on screen
+                        double pull = (scale0 == scale1) ? 1 - t : (scale - scale1) / (scale0 - scale1);
+                        BigDecimal cx = cx1.add(cx0.subtract(cx1).multiply(BigDecimal.valueOf(pull)));
+                        BigDecimal cy = cy1.add(cy0.subtract(cy1).multiply(BigDecimal.valueOf(pull)));
+
+                        FractalGenerator.Seed seed = (done != null && reuse > 0)
+                                ? FractalGenerator.Seed.reproject(done.handle().iterations(), done.seed(), w, h,
+                                        done.centerX(), done.centerY(), done.scale(), cx, cy, scale, reuse)
+                                : null;
+                        pending.add(new Frame(next, FractalGenerator.generateFrame(new FractalGenerator.Lane(),
+                                type, w, h, maxIter, cx, cy, scale, jr, ji, seed), seed, cx, cy, scale));
+                        next++;
+                    }
 
-            ExecutorService pool = Executors.newFixedThreadPool(
-                    Math.max(1, Runtime.getRuntime().availableProcessors()));
+                    Frame head = pending.removeFirst();
+                    // later frames keep rendering meanwhile; their rings are drained too
+                    try {
+                        while (!head.handle().pool().awaitTermination(10, TimeUnit.MILLISECONDS)) {
+                            FractalGenerator.update(head.handle(), r -> {});
+                            for (Frame f : pending) FractalGenerator.update(f.handle(), r -> {});
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    FractalGenerator.update(head.handle(), r -> {});
+
+                    int[] pixels = head.handle().pixels();
+                    try (FileChannel ch = raw ? null : FileChannel.open(
+                            out.resolve(String.format("frame_%05d.ppm", head.index())), StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+                    {
+                        FileChannel sink = raw ? stream : ch;
+                        if (!raw) sink.write(ByteBuffer.wrap(header));
+                        for (int y = 0; y < h; y++) {
+                            BatchRender.rgb(pixels, y * w, w, line);
+                            ByteBuffer buf = ByteBuffer.wrap(line);
+                            while (buf.hasRemaining()) sink.write(buf);
+                        }
+                    }
+
+                    done = head;
+                    if (head.seed() != null) reused += head.seed().count;
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.err.printf("frame %d of %d (%.1f frames/min)%n",
+                            head.index() + 1, frames, (head.index() + 1) * 60 / seconds);
+                }
+            }
 
-            FractalControl handle = new FractalControl(pool, cancelled, queue, tasks);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("%d frames in %.1fs: %.1f frames/min, %.1f%% of pixels reused%n",
+                    frames, seconds, frames * 60 / seconds, 100.0 * reused / ((double) frames * w * h));
+        }
+    }
 
-            pool.submit(() -> {
-                try {
-                    if (type == FractalType.TREE) {
-                        double length = Math.min(w, h) * 0.18;
-                        submitBranch(handle, w/2, (int)(h*0.9),
-                                -90.0, length, depth, angleDeg, scale);
-                    } else {
-                        generateSet(handle, type, w, h, maxIter,
-                                centerX, centerY, scale, juliaRe, juliaIm);
+    /* ===================== Distributed render ===================== */
+    /**
+     * {@code FractalAppExt --coordinate [params.properties] [key=value ...]}
+     * renders a Mandelbrot/Julia frame like --batch, but leases its rows to
+     * worker processes ({@code FractalAppExt --worker port=...}) over loopback
+     * sockets. Each band of {@code leaseRows} rows goes to one worker at a time;
+     * a worker that disconnects, or holds a lease longer than
+     * {@code leaseSeconds}, is dropped and its band goes back to the front of
+     * the queue. Returned bands are written straight into the memory-mapped PPM
+     * file. {@code spawn=N} starts N workers as child JVMs; more can join at any
+     * time. The coordinator parses the job as its workers will, palette
+     * included, and fails before listening if they could not render it.
+     *
+     * <p>Keys: those of --batch plus port, leaseRows, leaseSeconds and spawn.
+     * A worker takes host and port.
+     */
+    static final class Distributed {
+
+        /** Sent instead of a band's first row once every band is done. */
+        private static final int DONE = -1;
+        /** How often the acceptor looks whether the frame is done. */
+        private static final int ACCEPT_POLL_MILLIS = 200;
+
+        static void coordinate(String[] args) throws IOException {
+            Properties p = BatchRender.parameters(args);
+
+            // a job every worker would reject would keep its bands queued forever
+            Job frame = Job.parse(p);
+            BatchRender.configure(p);
+            int w = frame.w(), h = frame.h();
+            Path out = Path.of(p.getProperty("out", "fractal.ppm"));
+            int port = Integer.parseInt(p.getProperty("port", "7071"));
+            int leaseRows = Math.max(1, Integer.parseInt(p.getProperty("leaseRows", "64")));
+            int leaseMillis = (int) (1000 * Double.parseDouble(p.getProperty("leaseSeconds", "60")));
+            int spawn = Integer.parseInt(p.getProperty("spawn", "0"));
+
+            leaseRows = Math.min(leaseRows, Math.min(h, 0xFFFF));
+
+            StringWriter job = new StringWriter();
+            p.store(job, null);
+
+            BlockingDeque<Integer> leases = new LinkedBlockingDeque<>();
+            for (int top = 0; top < h; top += leaseRows) leases.add(top);
+            CountDownLatch remaining = new CountDownLatch(leases.size());
+
+            byte[] header = ("P6\n" + w + " " + h + "\n255\n").getBytes(StandardCharsets.US_ASCII);
+            long start = System.nanoTime();
+            List<Process> children = new ArrayList<>();
+
+            try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                 ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress()))
+            {
+                ch.write(ByteBuffer.wrap(header), 0);
+                Coordinator coordinator = new Coordinator(ch, header.length, w, h, leaseRows, leaseMillis,
+                        job.toString(), leases, remaining, start);
+
+                List<Thread> connections = Collections.synchronizedList(new ArrayList<>());
+                server.setSoTimeout(ACCEPT_POLL_MILLIS);
+                Thread acceptor = new Thread(() -> {
+                    for (int id = 0; remaining.getCount() > 0; ) {
+                        Socket s;
+                        try { s = server.accept(); }
+                        catch (SocketTimeoutException e) { continue; }   // look again whether the frame is done
+                        catch (IOException e) { return; }
+                        Thread t = new Thread(() -> coordinator.serve(s), "lease-" + id++);
+                        t.setDaemon(true);
+                        connections.add(t);
+                        t.start();
                     }
-                } finally {
-                    if (handle.tasks.decrementAndGet() == 0 && !handle.pool.isShutdown()) {
-                        handle.pool.shutdown();
+                }, "lease-acceptor");
+                acceptor.setDaemon(true);
+                acceptor.start();
+
+                for (int i = 0; i < spawn; i++) {
+                    children.add(spawnWorker(port));
+                }
+                System.err.printf("%d bands of %d rows, waiting for workers on port %d%n",
+                        remaining.getCount(), leaseRows, server.getLocalPort());
+
+                try {
+                    remaining.await();
+                    acceptor.join();
+                    // let every connection tell its worker to stop
+                    for (Thread t : connections.toArray(new Thread[0])) t.join(1000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                System.err.printf("%dx%d in %.1fs%n", w, h, (System.nanoTime() - start) / 1e9);
+            } finally {
+                for (Process c : children) {
+                    try {
+                        if (!c.waitFor(5, TimeUnit.SECONDS)) c.destroy();
+                    } catch (InterruptedException e) {
+                        c.destroy();
+                        Thread.currentThread().interrupt();
                     }
                 }
-            });
+            }
+        }
 
-            return handle;
+        /** A worker JVM started with this JVM's options and class path. */
+        private static Process spawnWorker(int port) throws IOException {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+            cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            cmd.addAll(List.of("-cp", System.getProperty("java.class.path"),
+                    FractalAppExt.class.getName(), "--worker", "port=" + port));
+            return new ProcessBuilder(cmd)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
         }
 
-        private static void submitBranch(
-                FractalControl handle,
-                int x, int y,
-                double angle, double length,
-                int height,
-                double angleDeg, double scale)
+        /** The frame of a distributed render, parsed the same way by the coordinator and its workers. */
+        private record Job(FractalType type, int w, int h, int maxIter,
+                           BigDecimal cx, BigDecimal cy, double scale, double jr, double ji)
+        {
+            static Job parse(Properties p) {
+                FractalType type = FractalType.valueOf(p.getProperty("type", "MANDELBROT").toUpperCase(Locale.ROOT));
+                Job job = new Job(type,
+                        Integer.parseInt(p.getProperty("width", "1920")),
+                        Integer.parseInt(p.getProperty("height", "1080")),
+                        Integer.parseInt(p.getProperty("maxIter", "500")),
+                        new BigDecimal(p.getProperty("centerX", type == FractalType.JULIA ? "0" : "-0.5")),
+                        new BigDecimal(p.getProperty("centerY", "0")),
+                        Double.parseDouble(p.getProperty("scale", "3.0")),
+                        Double.parseDouble(p.getProperty("juliaRe", "-0.8")),
+                        Double.parseDouble(p.getProperty("juliaIm", "0.156")));
+                BatchRender.check(type, job.w, job.h, job.scale);
+                return job;
+            }
+        }
+
+        /** Coordinator state shared by the connection threads. */
+        private record Coordinator(FileChannel ch, long offset,
+                             int w, int h, int rows, int timeoutMillis,
+                             String job,
+                             BlockingDeque<Integer> leases,
+                             CountDownLatch remaining,
+                             long start)
         {
-            if (height == 0 || handle.isCancelled.get()) return;
+            /**
+             * Hands bands to one worker until the frame is done. A band is taken
+             * back if the worker fails or runs out of time while holding it.
+             */
+            void serve(Socket socket) {
+                String name = Thread.currentThread().getName();
+                try (socket;
+                     DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())))
+                {
+                    socket.setSoTimeout(timeoutMillis);
+                    out.writeUTF(job);
+                    out.flush();
+
+                    byte[] band = new byte[3 * w * rows];
+                    while (remaining.getCount() > 0) {
+                        Integer top = leases.poll(100, TimeUnit.MILLISECONDS);
+                        if (top == null) continue;
+                        int n = Math.min(rows, h - top);
+                        // the band is held until it is on disk; any failure before that hands it back
+                        try {
+                            out.writeInt(top);
+                            out.writeInt(n);
+                            out.flush();
+                            if (in.readInt() != top) throw new IOException("band out of order");
+                            in.readFully(band, 0, 3 * w * n);
+
+                            MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_WRITE, offset + 3L * w * top, 3L * w * n);
+                            map.put(band, 0, 3 * w * n);
+                            map.force();
+                            System.err.printf("%s: rows %d-%d of %d (%.1fs)%n",
+                                    name, top, top + n, h, (System.nanoTime() - start) / 1e9);
+                            remaining.countDown();
+                        } catch (IOException | RuntimeException e) {
+                            leases.addFirst(top);
+                            throw e;
+                        }
+                    }
+                    out.writeInt(DONE);
+                    out.flush();
+                } catch (IOException | RuntimeException e) {
+                    System.err.printf("%s: worker dropped (%s)%n", name, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
 
-            if (slowMode) {
-                try { Thread.sleep(100); } catch (InterruptedException ignore) {}
+        /** Renders the bands a coordinator leases until it says the frame is done. */
+        static void work(String[] args) throws IOException {
+            Properties a = BatchRender.parameters(args);
+            String host = a.getProperty("host", InetAddress.getLoopbackAddress().getHostAddress());
+            int port = Integer.parseInt(a.getProperty("port", "7071"));
+
+            try (Socket socket = new Socket(host, port);
+                 DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream())))
+            {
+                Properties p = new Properties();
+                p.load(new StringReader(in.readUTF()));
+
+                Job job = Job.parse(p);
+                BatchRender.configure(p);
+                int w = job.w();
+
+                byte[] line = new byte[3 * w];
+                for (int top; (top = in.readInt()) != DONE; ) {
+                    int rows = in.readInt();
+                    FractalGenerator.FractalControl handle = FractalGenerator.generateBand(job.type(), w, job.h(),
+                            top, rows, job.maxIter(), job.cx(), job.cy(), job.scale(), job.jr(), job.ji());
+                    if (!BatchRender.await(handle)) return;
+
+                    out.writeInt(top);
+                    int[] pixels = handle.pixels();
+                    for (int y = 0; y < rows; y++) {
+                        BatchRender.rgb(pixels, y * w, w, line);
+                        out.write(line);
+                    }
+                    out.flush();
+                }
             }
+        }
+    }
 
-            int x2 = x + (int)Math.round(Math.cos(Math.toRadians(angle)) * length);
-            int y2 = y + (int)Math.round(Math.sin(Math.toRadians(angle)) * length);
+    /* ============================================================
+     *  FractalGenerator — CONCURRENT, UI-FREE FRACTAL ENGINE
+     * ============================================================ */
+    static final class FractalGenerator {
 
-            int argb = (height < 5)
-                    ? new Color(20, 140, 20).getRGB()
-                    : new Color(40, 40, 40).getRGB();
+        private static volatile boolean slowMode = true;
 
-            try { handle.queue.put(new Line(x, y, x2, y2, argb)); }
-            catch (InterruptedException ignored) {}
+        /** Off: trees are drawn as fast as the workers can, without the per-branch sleep. */
+        static void setSlowMode(boolean on) { slowMode = on; }
 
-            double nextLen = length * scale;
+        static boolean slowMode() { return slowMode; }
 
-            handle.tasks.incrementAndGet();
-            handle.pool.submit(() -> {
-                try {
-                    submitBranch(handle, x2, y2,
-                            angle - angleDeg, nextLen,
-                            height - 1, angleDeg, scale);
-                } finally {
-                    if (handle.tasks.decrementAndGet() == 0 && !handle.pool.isShutdown())
-                        handle.pool.shutdown();
-                }
-            });
+        /** Long-lived workers shared by every render; see {@link RenderScheduler}. */
+        private static volatile RenderScheduler scheduler = new RenderScheduler(
+                schedulerMode(System.getProperty("fractal.scheduler")),
+                Integer.getInteger("fractal.threads", Runtime.getRuntime().availableProcessors()));
 
-            submitBranch(handle, x2, y2,
-                    angle + angleDeg, nextLen,
-                    height - 1, angleDeg, scale);
+        /**
+         * The mode named by -Dfractal.scheduler, in any case. A name that is not a
+         * mode is reported and replaced by WORK_STEALING, since this runs in the
+         * class initialiser and an exception there would take the app down.
+         */
+        static RenderScheduler.Mode schedulerMode(String name) {
+            if (name == null) return RenderScheduler.Mode.WORK_STEALING;
+            try {
+                return RenderScheduler.Mode.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.err.printf("fractal.scheduler: unknown mode '%s', using work_stealing; expected one of %s%n",
+                        name, Arrays.toString(RenderScheduler.Mode.values()).toLowerCase(Locale.ROOT));
+                return RenderScheduler.Mode.WORK_STEALING;
+            }
         }
 
-        
-        private static void generateSet(
-                FractalControl handle,
-                FractalType type,
-                int w, int h,
-                int maxIter,
-                double centerX, double centerY,
-                double scale,
-                double juliaRe, double juliaIm)
-        {
-            double scaleX = scale;
-            double scaleY = scale * h / (double) w;
+        /** Renders already running finish on the scheduler they started on. */
+        static synchronized void setScheduler(RenderScheduler.Mode mode, int threads) {
+            RenderScheduler old = scheduler;
+            scheduler = new RenderScheduler(mode, threads);
+            old.retire();
+        }
 
-            double xmin = centerX - scaleX / 2.0;
-            double ymin = centerY - scaleY / 2.0;
+        static void setParallelism(int threads) { setScheduler(scheduler.requestedMode(), threads); }
 
-            for (int y = 0; y < h; y++) {
-                final int Y = y;
+        static RenderScheduler scheduler() { return scheduler; }
 
-                handle.tasks.incrementAndGet();
+        /** Branches of one tree level handled by a single task; longer levels are split into chunks. */
+        private static volatile int treeChunk = Integer.getInteger("fractal.tree.chunk", 4096);
 
-                handle.pool.submit(() -> {
-                    try {
-                        if (handle.isCancelled.get()) return;
+        static void setTreeChunk(int branches) { treeChunk = Math.max(1, branches); }
 
-                        int[] row = new int[w];
+        /**
+         * Level of detail for trees: levels whose branches are shorter than
+         * {@link #LOD_PIXELS} are not drawn but splatted as density at the end of
+         * the last drawn level, and subtrees that would redraw lines already
+         * drawn are skipped. Trees may then go down to {@link #MAX_LOD_DEPTH}.
+         */
+        private static volatile boolean treeLod = Boolean.getBoolean("fractal.tree.lod");
 
-                        double imag = ymin +
-                                (Y / (double)(h - 1)) * scaleY;
+        static void setTreeLod(boolean on) { treeLod = on; }
 
-                        for (int x = 0; x < w; x++) {
-                            if (handle.isCancelled.get()) return;
+        static boolean treeLod() { return treeLod; }
 
-                            double real = xmin +
-                                    (x / (double)(w - 1)) * scaleX;
+        /** Fill rectangles bordered by set interior instead of iterating every pixel. */
+        private static volatile boolean marianiSilver = Boolean.getBoolean("fractal.marianiSilver");
 
-                            row[x] = switch (type) {
-                                case MANDELBROT -> mandelbrot(real, imag, maxIter);
-                                case JULIA -> julia(real, imag, juliaRe, juliaIm, maxIter);
-                                default -> 0x000000;
-                            };
-                        }
+        static void setMarianiSilver(boolean on) { marianiSilver = on; }
 
-                        handle.queue.put(new RowInfo(Y, row));
+        /** Render coarse preview passes before the full-resolution one. */
+        private static volatile boolean progressive =
+                Boolean.parseBoolean(System.getProperty("fractal.progressive", "true"));
 
-                    } catch (InterruptedException ignore) {
-                        return;
-                    } finally {
-                        if (handle.tasks.decrementAndGet() == 0 && !handle.pool.isShutdown()) {
-                            handle.pool.shutdown();
-                        }
-                    }
-                });
+        static void setProgressive(boolean on) { progressive = on; }
+
+        /** Extra jittered samples per edge pixel in the anti-aliasing pass; 0 turns the pass off. */
+        private static volatile int antialias = Integer.getInteger("fractal.aa", 0);
+
+        static void setAntialias(int samples) { antialias = Math.max(0, samples); }
+
+        static int antialias() { return antialias; }
+
+        /** Samples the AA box of the UI asks for. */
+        static final int AA_SAMPLES = 4;
+        /** Smooth counts of neighbouring pixels further apart than this mark an edge. */
+        private static final float AA_THRESHOLD = 1.0f;
+        /** Rows refined by one task of the anti-aliasing pass. */
+        private static final int AA_ROWS = 4;
+
+        /**
+         * Block edges of the preview passes. Each pass samples one pixel per block
+         * (1/16, then 1/4 of the frame) and paints the whole block with it.
+         */
+        private static final int[] PREVIEW_BLOCKS = { 4, 2 };
+
+        /** An orbit that returns within this distance of an earlier point is taken as periodic; 0 disables. */
+        private static volatile double periodicityEpsilon =
+                Double.parseDouble(System.getProperty("fractal.periodicityEpsilon", "1e-13"));
+
+        static void setPeriodicityEpsilon(double eps) { periodicityEpsilon = Math.max(0.0, eps); }
+
+        /**
+         * Batch escape-time kernel. Iterates z -> z^2 + c for n points at once;
+         * zr/zi hold the start points on entry and the final z on return, iter
+         * receives the iteration count of each point.
+         */
+        interface EscapeKernel {
+            void iterate(double[] zr, double[] zi, double[] cr, double[] ci,
+                         double[] iter, int n, int maxIter);
+
+            /** The same in single precision, for {@link Precision#FLOAT} frames. */
+            void iterate(float[] zr, float[] zi, float[] cr, float[] ci,
+                         float[] iter, int n, int maxIter);
+        }
+
+        /** The SIMD kernel, or null when jdk.incubator.vector is not available. */
+        private static final EscapeKernel VECTOR_KERNEL = loadVectorKernel();
+
+        /** Use {@link #VECTOR_KERNEL} when present; otherwise the scalar kernels run. */
+        private static volatile boolean vectorKernel =
+                Boolean.parseBoolean(System.getProperty("fractal.vector", "true"));
+
+        static void setVectorKernel(boolean on) { vectorKernel = on; }
+
+        static boolean vectorKernelAvailable() { return VECTOR_KERNEL != null; }
+
+        private static EscapeKernel loadVectorKernel() {
+            try {
+                return (EscapeKernel) Class.forName("assigment.VectorKernel")
+                        .getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                return null;
             }
         }
 
-        
-        private static int mandelbrot(double cr, double ci, int maxIter) {
-            double zr = 0, zi = 0;
-            double zr2 = 0, zi2 = 0;
-            int i = 0;
+        /** Deepest tree we preallocate for: 2^24-1 branches in five int arrays. */
+        static final int MAX_TREE_DEPTH = 24;
+        /** Deepest nominal tree in LOD mode; only its top MAX_TREE_DEPTH levels at most are stored. */
+        static final int MAX_LOD_DEPTH = 30;
+        /**
+         * Stored lines per frame pixel in LOD mode. Levels past this budget would
+         * mostly overdraw pixels already drawn, so they are splatted as well.
+         */
+        private static final int LOD_LINES_PER_PIXEL = 1;
+        /** Branches shorter than this many pixels are splatted instead of drawn. */
+        static final double LOD_PIXELS = 0.5;
+        /** Pruned branches per pixel at which a splat is about 63% opaque. */
+        private static final double SPLAT_SATURATION = 16.0;
+        /** Subtrees are deduplicated from this level on, shallower ones never coincide. */
+        private static final int DEDUP_LEVEL = 10;
+        /**
+         * Bound on the bitmap of claimed subtree roots, which is also never larger
+         * than one int array of the buffer; deeper levels are kept first.
+         */
+        private static final long DEDUP_BYTES = 64L << 20;
+
+        private static final int TRUNK_ARGB = new Color(40, 40, 40).getRGB();
+        private static final int LEAF_ARGB = new Color(20, 140, 20).getRGB();
+
+        /**
+         * Struct-of-arrays store for tree lines. Every branch owns the slot at its
+         * breadth-first index (see {@link TreeGeometry}), so any index range of a
+         * level is contiguous and can be published as a single range record.
+         *
+         * <p>In LOD mode a slot whose subtree was skipped keeps argb 0, and the
+         * deepest stored level marks the slots whose end point carries a splat:
+         * the {@link #splatMass} branches of the levels below that were pruned.
+         */
+        static final class LineBuffer {
+            final int[] x1, y1, x2, y2, argb;
+            /** Non-zero where the end point carries a splat; null when nothing was pruned. */
+            final byte[] splat;
+            /** Nominal branches pruned below each splat. */
+            final long splatMass;
+
+            final int levels;
+            private final int w, h;
+            private final double splatAlpha;
+            /** One bit per (level, heading, pixel) of a claimed subtree root; null without dedup. */
+            private final AtomicLongArray seen;
+            private final long[] levelBits;
+            private final int dedupFrom;
+
+            /**
+             * @param levels stored levels
+             * @param pruned nominal levels below them that are splatted
+             * @param dedup  skip subtrees rooted where an identical one already is
+             */
+            LineBuffer(int levels, int pruned, int w, int h, boolean dedup) {
+                int n = (1 << levels) - 1;
+                x1 = new int[n]; y1 = new int[n];
+                x2 = new int[n]; y2 = new int[n];
+                argb = new int[n];
+                this.levels = levels;
+                this.w = w;
+                this.h = h;
+
+                splat = (pruned > 0) ? new byte[n] : null;
+                splatMass = (pruned > 0) ? (2L << pruned) - 2 : 0;
+                splatAlpha = 1.0 - Math.exp(-splatMass / SPLAT_SATURATION);
+
+                // level L has L + 1 headings; drop the shallowest levels until the bitmap fits
+                int from = DEDUP_LEVEL;
+                long bits = 0;
+                for (int l = from; l < levels; l++) bits += (l + 1L) * w * h;
+                long maxBits = Math.min(DEDUP_BYTES, (long) n * Integer.BYTES) * 8;
+                for (; from < levels && bits > maxBits; from++) bits -= (from + 1L) * w * h;
+                dedupFrom = from;
+                if (dedup && from < levels) {
+                    levelBits = new long[levels - from];
+                    for (int l = from + 1; l < levels; l++) {
+                        levelBits[l - from] = levelBits[l - from - 1] + (long) l * w * h;
+                    }
+                    seen = new AtomicLongArray((int) ((bits + 63) >>> 6));
+                } else {
+                    levelBits = null;
+                    seen = null;
+                }
+            }
 
-            while (i < maxIter && (zr2 + zi2) <= 4.0) {
-                zi = 2 * zr * zi + ci;
-                zr = zr2 - zi2 + cr;
-                zr2 = zr * zr;
-                zi2 = zi * zi;
-                i++;
+            int capacity() { return argb.length; }
+
+            /** Slots that hold a line; LOD leaves the slots of skipped subtrees empty. */
+            int drawn() {
+                int n = 0;
+                for (int c : argb) if (c != 0) n++;
+                return n;
+            }
+
+            /**
+             * Claims the subtree whose root branch starts at pixel (x, y) on the
+             * given level with heading index {@code turn} (see {@link TreeGeometry}).
+             * Branch lengths depend only on the level, so two such subtrees draw
+             * the same lines to within a pixel; only the first claim returns true.
+             */
+            boolean claim(int x, int y, int turn, int level) {
+                if (seen == null || level < dedupFrom || x < 0 || y < 0 || x >= w || y >= h) return true;
+                long heading = (turn + level) >> 1;
+
+                long bit = levelBits[level - dedupFrom] + (heading * h + y) * w + x;
+                long mask = 1L << bit;
+                return (seen.getAndAccumulate((int) (bit >>> 6), mask, (a, b) -> a | b) & mask) == 0;
+            }
+
+            /** {@code rgb} with one splat of {@code leaf} composited over it; repeated splats darken it like density. */
+            int splatOver(int rgb) {
+                int r = (rgb >> 16) & 0xFF, g = (rgb >> 8) & 0xFF, b = rgb & 0xFF;
+                r += (int) Math.round(((LEAF_ARGB >> 16 & 0xFF) - r) * splatAlpha);
+                g += (int) Math.round(((LEAF_ARGB >> 8 & 0xFF) - g) * splatAlpha);
+                b += (int) Math.round(((LEAF_ARGB & 0xFF) - b) * splatAlpha);
+                return (r << 16) | (g << 8) | b;
+            }
+
+            void set(int i, int ax, int ay, int bx, int by, int color) {
+                x1[i] = ax; y1[i] = ay;
+                x2[i] = bx; y2[i] = by;
+                argb[i] = color;
             }
-            return palette(i, maxIter, zr, zi);
         }
 
-        private static int julia(double zr, double zi, double cr, double ci, int maxIter) {
-            int i = 0;
-            double zr2 = zr * zr, zi2 = zi * zi;
+        /*
+         * Records handed to the UI are plain longs: a tree publishes the slot range
+         * [from, to) of its LineBuffer packed as from << 32 | to, a set publishes
+         * a dirty rectangle of its pixel buffer (see rect()).
+         */
+        static long range(int from, int to) { return ((long) from << 32) | (to & 0xFFFFFFFFL); }
+        static int rangeFrom(long record) { return (int) (record >>> 32); }
+        static int rangeTo(long record) { return (int) record; }
 
-            while (i < maxIter && (zr2 + zi2) <= 4.0) {
-                double nzr = zr2 - zi2 + cr;
-                double nzi = 2*zr*zi + ci;
+        public record FractalControl(
+                RenderScope pool,
+                AtomicBoolean isCancelled,
+                RecordRing queue,
+                LineBuffer lines,
+                int[] pixels,
+                float[] iterations,
+                int maxIter,
+                RenderMetrics metrics
+        ) {
+            /** True once this render was cancelled or superseded; workers stop at their next check. */
+            boolean dead() { return pool.dead(); }
+        }
 
-                zr = nzr;
-                zi = nzi;
+        /**
+         * Counters of one render, written by the workers and read at any time
+         * through {@link #snapshot()}. Units are tree lines or frame pixels; a set
+         * counts a pixel once, when the full pass or a cache hit makes it final, so
+         * preview blocks and refined edges do not add to it and a render never
+         * reports more than its total. Busy time is the time workers spent in leaf work, keyed by thread name.
+         */
+        static final class RenderMetrics {
+            private final FractalType type;
+            private final RecordRing queue;
+            private final long total;
+            private final long startNanos = System.nanoTime();
+            private final AtomicLong firstRecordNanos = new AtomicLong(-1);
+            private volatile long endNanos = -1;
+            private volatile Precision precision;
+
+            private final LongAdder submitted = new LongAdder();
+            private final LongAdder completed = new LongAdder();
+            private final LongAdder units = new LongAdder();
+            private final ConcurrentHashMap<String, LongAdder> busy = new ConcurrentHashMap<>();
+
+            private final RenderEvent event = new RenderEvent();
+
+            /** @param total units of the finished render: line slots of a tree, pixels of a set */
+            RenderMetrics(FractalType type, int w, int h, int maxIter, long total, RecordRing queue) {
+                this.type = type;
+                this.queue = queue;
+                this.total = total;
+                event.type = type.name();
+                event.width = w;
+                event.height = h;
+                event.maxIter = maxIter;
+                event.begin();
+            }
 
-                zr2 = zr * zr;
-                zi2 = zi * zi;
-                i++;
+            void taskSubmitted() { submitted.increment(); }
+            void taskCompleted() { completed.increment(); }
+
+            void busy(long nanos) {
+                busy.computeIfAbsent(Thread.currentThread().getName(), k -> new LongAdder()).add(nanos);
+            }
+
+            /** A record carrying {@code n} finished units went into the ring. */
+            void published(long n) {
+                units.add(n);
+                if (firstRecordNanos.get() < 0) {
+                    firstRecordNanos.compareAndSet(-1, System.nanoTime() - startNanos);
+                }
+            }
+
+            void finish(boolean cancelled) {
+                endNanos = System.nanoTime();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.units = units.sum();
+                    event.tasks = completed.sum();
+                    event.firstRecordNanos = firstRecordNanos.get();
+                    event.queueHighWater = queue.highWater();
+                    event.cancelled = cancelled;
+                    event.commit();
+                }
+            }
+
+            FractalType type() { return type; }
+
+            /** The tier a Mandelbrot/Julia frame is iterated in; null for trees and before it is chosen. */
+            Precision precision() { return precision; }
+
+            void precision(Precision p) {
+                precision = p;
+                event.precision = p.name();
+            }
+
+            Snapshot snapshot() {
+                long end = endNanos;
+                Map<String, Long> perWorker = new TreeMap<>();
+                busy.forEach((name, t) -> perWorker.put(name, t.sum()));
+                return new Snapshot(submitted.sum(), completed.sum(), units.sum(), total,
+                        queue.highWater(), perWorker, firstRecordNanos.get(),
+                        ((end < 0) ? System.nanoTime() : end) - startNanos, end >= 0);
+            }
+
+            record Snapshot(
+                    long tasksSubmitted, long tasksCompleted,
+                    long units, long totalUnits,
+                    long queueHighWater,
+                    Map<String, Long> busyNanos,
+                    long firstRecordNanos,
+                    long elapsedNanos,
+                    boolean finished)
+            {
+                double unitsPerSecond() { return (elapsedNanos == 0) ? 0 : units * 1e9 / elapsedNanos; }
             }
-            return palette(i, maxIter, zr, zi);
         }
 
-        private static int palette(int iter, int maxIter, double zr, double zi) {
-            if (iter >= maxIter) return 0x000000;
+        @Name("assigment.Render")
+        @Label("Fractal Render")
+        @Category("Fractal")
+        static final class RenderEvent extends Event {
+            @Label("Type") String type;
+            @Label("Width") int width;
+            @Label("Height") int height;
+            @Label("Max Iterations / Depth") int maxIter;
+            @Label("Precision") String precision;
+            @Label("Units") long units;
+            @Label("Tasks") long tasks;
+            @Label("First Record") @Timespan(Timespan.NANOSECONDS) long firstRecordNanos;
+            @Label("Queue High Water") long queueHighWater;
+            @Label("Cancelled") boolean cancelled;
+        }
+
+        @Name("assigment.Tile")
+        @Label("Fractal Tile")
+        @Category("Fractal")
+        static final class TileEvent extends Event {
+            @Label("X") int x;
+            @Label("Y") int y;
+            @Label("Width") int width;
+            @Label("Height") int height;
+            @Label("Preview Block") int block;
+            @Label("Cached") boolean cached;
+        }
+
+        private static final EventType TILE_EVENT = EventType.getEventType(TileEvent.class);
+
+        /**
+         * Bounded multi-producer / single-consumer ring of {@code long} records.
+         * Producers claim a slot with one CAS on the tail and publish it through a
+         * per-slot sequence number; the UI thread is the only consumer. What a
+         * producer does when the ring is full is chosen by {@link Backpressure}.
+         */
+        static final class RecordRing {
+
+            enum Backpressure {
+                /** Park on a condition until the consumer frees a slot. */
+                BLOCK,
+                /** Spin briefly, then park in short timed naps until a slot frees up. */
+                SPIN_THEN_PARK,
+                /** Never wait: spill into an unbounded side buffer drained after the ring. */
+                OVERFLOW
+            }
+
+            private static final int SPINS = 128;
+            private static final long PARK_NANOS = 50_000L;
+            /** A blocked producer wakes this often to see whether its render died. */
+            private static final long BLOCK_RECHECK_NANOS = 10_000_000L;
+
+            private final long[] slots;
+            private final AtomicLongArray sequence;
+            private final int mask;
+            private final Backpressure mode;
+
+            private final AtomicLong tail = new AtomicLong();
+            private volatile long head;
+            private volatile long highWater;
+
+            private final LongAdder overflowed = new LongAdder();
+            private final LongAdder waits = new LongAdder();
+
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Condition notFull = lock.newCondition();
+            private final AtomicInteger waiters = new AtomicInteger();
+
+            private long[] overflow = new long[16];
+            /** Written under the ring's monitor; read without it only to skip the lock when empty. */
+            private volatile int overflowSize;
+
+            RecordRing(int capacity, Backpressure mode) {
+                int cap = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+                this.slots = new long[cap];
+                this.sequence = new AtomicLongArray(cap);
+                for (int i = 0; i < cap; i++) sequence.set(i, i);
+                this.mask = cap - 1;
+                this.mode = mode;
+            }
+
+            /** Single CAS attempt loop; false only when the ring is full. */
+            boolean tryOffer(long record) {
+                for (;;) {
+                    long t = tail.get();
+                    int i = (int) t & mask;
+                    long dif = sequence.get(i) - t;
+                    if (dif == 0) {
+                        if (tail.compareAndSet(t, t + 1)) {
+                            slots[i] = record;
+                            sequence.set(i, t + 1);
+                            return true;
+                        }
+                    } else if (dif < 0) {
+                        return false;
+                    } else {
+                        Thread.onSpinWait();
+                    }
+                }
+            }
+
+            void offer(long record) throws InterruptedException {
+                offer(record, CancelToken.NEVER);
+            }
+
+            /**
+             * Like {@link #offer(long)}, but a producer that has to wait gives up and
+             * drops the record once {@code token} is dead, since nobody may drain a
+             * superseded render's ring any more.
+             */
+            void offer(long record, CancelToken token) throws InterruptedException {
+                // while anything is spilled, later records queue behind it so each producer stays in order
+                if (mode == Backpressure.OVERFLOW && overflowSize > 0 && spill(record, false)) return;
+                if (tryOffer(record)) return;
+
+                switch (mode) {
+                    case OVERFLOW -> spill(record, true);
+                    case SPIN_THEN_PARK -> {
+                        waits.increment();
+                        for (int spins = 0; !tryOffer(record); spins++) {
+                            if (token.dead()) return;
+                            if (spins < SPINS) Thread.onSpinWait();
+                            else LockSupport.parkNanos(this, PARK_NANOS);
+                            if (Thread.interrupted()) throw new InterruptedException();
+                        }
+                    }
+                    case BLOCK -> {
+                        waits.increment();
+                        lock.lockInterruptibly();
+                        waiters.incrementAndGet();
+                        try {
+                            while (!tryOffer(record)) {
+                                if (token.dead()) return;
+                                notFull.awaitNanos(BLOCK_RECHECK_NANOS);
+                            }
+                        } finally {
+                            waiters.decrementAndGet();
+                            lock.unlock();
+                        }
+                    }
+                }
+            }
 
-            double mu = iter - Math.log(Math.log(zr*zr + zi*zi)) / Math.log(2);
-            double t = Math.min(1.0, Math.max(0.0, mu / maxIter));
+            /** Appends to the overflow buffer if it is non-empty, or unconditionally if {@code always}. */
+            private synchronized boolean spill(long record, boolean always) {
+                if (!always && overflowSize == 0) return false;
+                overflowed.increment();
+                if (overflowSize == overflow.length) {
+                    overflow = Arrays.copyOf(overflow, overflowSize * 2);
+                }
+                overflow[overflowSize++] = record;
+                return true;
+            }
 
-            float hue = (float)(0.7 + 10.0 * t);
-            return Color.HSBtoRGB(hue, 0.8f, 1.0f);
+            /**
+             * Consumer side: hands every published record to {@code sink}, returns the
+             * count. Spilled records follow the ring records; a producer's records
+             * only reach the ring again once the consumer has taken every spilled one,
+             * so each producer's records arrive in the order it offered them.
+             */
+            int drain(LongConsumer sink) {
+                long h = head;
+                long occupied = tail.get() - h;
+                if (occupied > highWater) highWater = occupied;
+
+                int n = 0;
+                for (;;) {
+                    int i = (int) h & mask;
+                    if (sequence.get(i) != h + 1) break;
+                    long record = slots[i];
+                    sequence.set(i, h + slots.length);
+                    h++;
+                    sink.accept(record);
+                    n++;
+                }
+                head = h;
+
+                if (n > 0 && waiters.get() > 0) {
+                    lock.lock();
+                    try { notFull.signalAll(); } finally { lock.unlock(); }
+                }
+
+                long[] spilled = null;
+                int spilledSize = 0;
+                synchronized (this) {
+                    if (overflowSize > 0) {
+                        spilled = Arrays.copyOf(overflow, overflowSize);
+                        spilledSize = overflowSize;
+                        overflowSize = 0;
+                    }
+                }
+                for (int k = 0; k < spilledSize; k++) sink.accept(spilled[k]);
+
+                return n + spilledSize;
+            }
+
+            int capacity() { return slots.length; }
+
+            /** Records published but not yet drained (ring only). */
+            int size() { return (int) Math.max(0, tail.get() - head); }
+
+            /** Largest ring occupancy seen at the start of a drain. */
+            long highWater() { return highWater; }
+
+            long published() { return tail.get(); }
+            long drained() { return head; }
+            long overflowed() { return overflowed.sum(); }
+
+            /** Times a producer found the ring full and had to wait. */
+            long waits() { return waits.sum(); }
+
+            Backpressure mode() { return mode; }
+        }
+
+        private static final int RING_CAPACITY = 4096;
+
+        private static volatile RecordRing.Backpressure backpressure = RecordRing.Backpressure.BLOCK;
+
+        static void setBackpressure(RecordRing.Backpressure mode) { backpressure = mode; }
+
+
+        /** Drains everything published so far into {@code sink}; returns the record count. */
+        public static int update(FractalControl handle, LongConsumer sink) {
+            return handle.queue.drain(sink);
+        }
+
+        public static FractalControl generate(
+                FractalType type,
+                int w, int h,
+                int depth, double angleDeg,
+                int maxIter,
+                BigDecimal centerX, BigDecimal centerY, double scale,
+                double juliaRe, double juliaIm)
+        {
+            boolean lod = treeLod;
+            int treeDepth = Math.min(depth, lod ? MAX_LOD_DEPTH : MAX_TREE_DEPTH);
+            double length = Math.min(w, h) * 0.18;
+            int levels = lod ? lodLevels(length, scale, treeDepth, (long) w * h * LOD_LINES_PER_PIXEL) : treeDepth;
+            LineBuffer lines = (type == FractalType.TREE)
+                    ? new LineBuffer(levels, treeDepth - levels, w, h, lod)
+                    : null;
+
+            return start(DEFAULT_LANE, type, w, h, lines, treeDepth, maxIter, handle -> {
+                if (type == FractalType.TREE) {
+                    TreeGeometry geometry = treeGeometry(handle, levels, angleDeg, scale);
+                    drawTree(handle, geometry, w/2, (int)(h*0.9), length);
+                } else {
+                    generateSet(handle, type, w, h, 0, h, maxIter,
+                            centerX, centerY, scale, juliaRe, juliaIm, null);
+                }
+            });
+        }
+
+        /**
+         * Levels whose branches are at least LOD_PIXELS long, within MAX_TREE_DEPTH
+         * and as many as fit in {@code maxLines} stored lines, so the buffer grows
+         * with the frame rather than with the nominal depth.
+         */
+        private static int lodLevels(double length, double scale, int depth, long maxLines) {
+            int levels = 1;
+            while (levels < Math.min(depth, MAX_TREE_DEPTH) && length * Math.pow(scale, levels) >= LOD_PIXELS
+                    && (2L << levels) - 1 <= maxLines) {
+                levels++;
+            }
+            return levels;
+        }
+
+        /**
+         * One frame of an animation. It renders like generate() but in the given
+         * lane, so frames in flight do not supersede each other. Pixels the seed
+         * covers are taken from an earlier frame instead of being iterated.
+         */
+        public static FractalControl generateFrame(
+                Lane lane,
+                FractalType type,
+                int w, int h,
+                int maxIter,
+                BigDecimal centerX, BigDecimal centerY, double scale,
+                double juliaRe, double juliaIm,
+                Seed seed)
+        {
+            if (type == FractalType.TREE) {
+                throw new IllegalArgumentException("frames are only defined for Mandelbrot/Julia");
+            }
+            return start(lane, type, w, h, null, 0, maxIter, handle ->
+                    generateSet(handle, type, w, h, 0, h, maxIter,
+                            centerX, centerY, scale, juliaRe, juliaIm, seed));
+        }
+
+        /**
+         * Renders rows [top, top + rows) of a w x frameH Mandelbrot/Julia frame into
+         * a w x rows buffer. The band is pixel-identical to the same rows of the full
+         * frame, so frames larger than the heap can be rendered band by band.
+         */
+        public static FractalControl generateBand(
+                FractalType type,
+                int w, int frameH,
+                int top, int rows,
+                int maxIter,
+                BigDecimal centerX, BigDecimal centerY, double scale,
+                double juliaRe, double juliaIm)
+        {
+            if (type == FractalType.TREE) {
+                throw new IllegalArgumentException("bands are only defined for Mandelbrot/Julia");
+            }
+            return start(DEFAULT_LANE, type, w, rows, null, 0, maxIter, handle ->
+                    generateSet(handle, type, w, rows, top, frameH, maxIter,
+                            centerX, centerY, scale, juliaRe, juliaIm, null));
+        }
+
+        /** Allocates the handle for a w x h render and runs {@code body} in a new scope of the scheduler. */
+        private static FractalControl start(
+                Lane lane,
+                FractalType type,
+                int w, int h,
+                LineBuffer lines, int treeDepth, int maxIter,
+                Consumer<FractalControl> body)
+        {
+            RecordRing queue = new RecordRing(RING_CAPACITY, backpressure);
+            AtomicBoolean cancelled = new AtomicBoolean(false);
+
+            RenderScope pool = scheduler.open(lane, cancelled);
+
+            int[] pixels = (type == FractalType.TREE) ? null : new int[w * h];
+            float[] iterations = (type == FractalType.TREE) ? null : new float[w * h];
+
+            FractalControl handle = new FractalControl(pool, cancelled, queue,
+                    lines, pixels, iterations, maxIter,
+                    new RenderMetrics(type, w, h, (type == FractalType.TREE) ? treeDepth : maxIter,
+                            (lines != null) ? lines.capacity() : (long) w * h, queue));
+
+            pool.submit(() -> {
+                try {
+                    body.accept(handle);
+                } finally {
+                    handle.metrics.finish(handle.dead());
+                    // every pass was joined by the driver, so the scope ends with it
+                    handle.pool.shutdown();
+                }
+            });
+
+            return handle;
+        }
+
+        /**
+         * Worker threads shared by all renders, so starting one costs no thread
+         * creation. In {@link Mode#WORK_STEALING} a render's driver and its
+         * fork/join tasks all run on one long-lived ForkJoinPool. In
+         * {@link Mode#VIRTUAL} each driver gets its own virtual thread, so drivers
+         * that wait (on a reference orbit, between passes, on a full ring) hold no
+         * worker, and only the fork/join tasks use the pool. Virtual threads need
+         * Java 21; on older runtimes VIRTUAL falls back to WORK_STEALING.
+         *
+         * <p>Opening a scope supersedes the older scopes of its {@link Lane}, so
+         * the newest render gets every worker.
+         */
+        static final class RenderScheduler {
+
+            enum Mode { WORK_STEALING, VIRTUAL }
+
+            private final Mode requested;
+            private final ForkJoinPool workers;
+            private final ExecutorService drivers;
+            private final Set<RenderScope> open = ConcurrentHashMap.newKeySet();
+            private volatile boolean retired;
+
+            RenderScheduler(Mode mode, int threads) {
+                this.requested = mode;
+                this.workers = new ForkJoinPool(Math.max(1, threads));
+                this.drivers = (mode == Mode.VIRTUAL) ? virtualThreads() : null;
+            }
+
+            /** Executors.newVirtualThreadPerTaskExecutor(), or null before Java 21. */
+            private static ExecutorService virtualThreads() {
+                try {
+                    return (ExecutorService) Executors.class
+                            .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+                    return null;
+                }
+            }
+
+            Mode requestedMode() { return requested; }
+
+            /** The mode actually in use. */
+            Mode mode() { return (drivers != null) ? Mode.VIRTUAL : Mode.WORK_STEALING; }
+
+            int parallelism() { return workers.getParallelism(); }
+
+            RenderScope open(Lane lane, AtomicBoolean cancelled) {
+                RenderScope scope = new RenderScope(this, lane, lane.epoch.incrementAndGet(), cancelled);
+                open.add(scope);
+                return scope;
+            }
+
+            private void dispatch(Runnable driver) {
+                if (drivers != null) drivers.execute(driver);
+                else workers.execute(driver);
+            }
+
+            private void closed(RenderScope scope) {
+                open.remove(scope);
+                if (retired && open.isEmpty()) shutdownWorkers();
+            }
+
+            /** Replaced by a new scheduler: shut down once the last open scope has closed. */
+            void retire() {
+                retired = true;
+                if (open.isEmpty()) shutdownWorkers();
+            }
+
+            private void shutdownWorkers() {
+                workers.shutdown();
+                if (drivers != null) drivers.shutdown();
+            }
+        }
+
+        /**
+         * Renders that replace one another, such as the frames of the UI canvas.
+         * Opening a scope advances the lane's epoch, and every older scope of the
+         * lane is dead from then on without being visited: its queued tasks and
+         * running kernels see the stale epoch at their next check and return.
+         * Renders in different lanes run side by side.
+         */
+        static final class Lane {
+            private final AtomicLong epoch = new AtomicLong();
+        }
+
+        /** Lane of generate() and generateBand(). */
+        static final Lane DEFAULT_LANE = new Lane();
+
+        /** What kernels poll, every {@link #CHECK_INTERVAL} iterations, to abandon a dead render. */
+        interface CancelToken {
+            CancelToken NEVER = () -> false;
+
+            boolean dead();
+        }
+
+        /** Escape iterations between two cancellation checks of a kernel. */
+        static final int CHECK_INTERVAL = 1 << 14;
+        private static final int CHECK_MASK = CHECK_INTERVAL - 1;
+
+        /**
+         * The tasks of one render on the shared scheduler. Shutting the scope down
+         * or waiting for it affects only this render; shutdownNow() cancels it.
+         * All fork/join work of the render runs inside {@link #invoke}, so the
+         * scope has terminated once its driver tasks have returned.
+         */
+        static final class RenderScope extends AbstractExecutorService implements AutoCloseable, CancelToken {
+            private final RenderScheduler scheduler;
+            private final Lane lane;
+            private final long epoch;
+            private final AtomicBoolean cancelled;
+
+            private final AtomicInteger active = new AtomicInteger();
+            private final CountDownLatch terminated = new CountDownLatch(1);
+            private volatile boolean shutdown;
+
+            private RenderScope(RenderScheduler scheduler, Lane lane, long epoch, AtomicBoolean cancelled) {
+                this.scheduler = scheduler;
+                this.lane = lane;
+                this.epoch = epoch;
+                this.cancelled = cancelled;
+            }
+
+            /** Cancelled, or superseded by a newer scope of the same lane. */
+            @Override public boolean dead() {
+                return cancelled.get() || lane.epoch.get() != epoch;
+            }
+
+            @Override public void execute(Runnable task) {
+                active.incrementAndGet();
+                if (shutdown) {
+                    finished();
+                    throw new RejectedExecutionException("render scope is shut down");
+                }
+                scheduler.dispatch(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        finished();
+                    }
+                });
+            }
+
+            private void finished() {
+                if (active.decrementAndGet() == 0 && shutdown) terminate();
+            }
+
+            private void terminate() {
+                if (terminated.getCount() > 0) {
+                    terminated.countDown();
+                    scheduler.closed(this);
+                }
+            }
+
+            /** Runs a fork/join task on the scheduler's workers and waits for it. */
+            void invoke(ForkJoinTask<?> task) {
+                if (ForkJoinTask.getPool() == scheduler.workers) task.invoke();
+                else scheduler.workers.invoke(task);
+            }
+
+            @Override public void shutdown() {
+                shutdown = true;
+                if (active.get() == 0) terminate();
+            }
+
+            @Override public List<Runnable> shutdownNow() {
+                cancelled.set(true);
+                shutdown();
+                return List.of();
+            }
+
+            @Override public boolean isShutdown() { return shutdown; }
+            @Override public boolean isTerminated() { return terminated.getCount() == 0; }
+
+            @Override public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+                return terminated.await(timeout, unit);
+            }
+
+            /** Structured end of a render: no new tasks, then wait for the running ones. */
+            @Override public void close() {
+                shutdown();
+                boolean interrupted = false;
+                while (!isTerminated()) {
+                    try { terminated.await(); }
+                    catch (InterruptedException e) { interrupted = true; }
+                }
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * The shape of a tree in its own units: the trunk starts at the origin,
+         * points up and has length 1. Branches are stored breadth first: the
+         * children of branch i are 2i + 1 (turning by -angleDeg) and 2i + 2 (by
+         * +angleDeg), so level L holds [2^L - 1, 2^(L+1) - 1). Every heading is
+         * -90 + k * angleDeg with k read off the index, so sines and cosines come
+         * from a table of 2 * levels + 1 entries, and a level is computed from the
+         * one above in independent index ranges. A geometry is drawn at any
+         * position and size, and a deeper one serves every shallower tree of the
+         * same angle and scale.
+         */
+        static final class TreeGeometry {
+            final int levels;
+            final double angleDeg, scale;
+            /** End point of every branch. */
+            final float[] x, y;
+
+            private final double[] cos, sin, length;
+
+            TreeGeometry(int levels, double angleDeg, double scale) {
+                int n = (1 << levels) - 1;
+                this.levels = levels;
+                this.angleDeg = angleDeg;
+                this.scale = scale;
+                x = new float[n];
+                y = new float[n];
+
+                cos = new double[2 * levels + 1];
+                sin = new double[2 * levels + 1];
+                for (int k = -levels; k <= levels; k++) {
+                    double a = Math.toRadians(-90.0 + k * angleDeg);
+                    cos[k + levels] = Math.cos(a);
+                    sin[k + levels] = Math.sin(a);
+                }
+                length = new double[levels];
+                for (int l = 0; l < levels; l++) {
+                    length[l] = (l == 0) ? 1.0 : length[l - 1] * scale;
+                }
+            }
+
+            static int first(int level) { return (1 << level) - 1; }
+
+            /** Right turns minus left turns on the way to branch i of the given level. */
+            static int turn(int i, int level) {
+                return 2 * Integer.bitCount(i + 1 - (1 << level)) - level;
+            }
+
+            boolean serves(int levels, double angleDeg, double scale) {
+                return this.levels >= levels && this.angleDeg == angleDeg && this.scale == scale;
+            }
+
+            /** End points of branches [from, to) of one level; the level above must be complete. */
+            void compute(int level, int from, int to) {
+                double len = length[level];
+                for (int i = from; i < to; i++) {
+                    int k = turn(i, level) + levels;
+                    double px = 0, py = 0;
+                    if (i > 0) {
+                        px = x[(i - 1) >> 1];
+                        py = y[(i - 1) >> 1];
+                    }
+                    x[i] = (float) (px + cos[k] * len);
+                    y[i] = (float) (py + sin[k] * len);
+                }
+            }
+        }
+
+        /** The last complete geometry, kept until the heap needs it back. */
+        private static volatile SoftReference<TreeGeometry> treeGeometry = new SoftReference<>(null);
+
+        /** Drops the cached geometry, so the next tree is computed from scratch. */
+        static void forgetTreeGeometry() { treeGeometry = new SoftReference<>(null); }
+
+        /** The cached geometry if it serves this tree, otherwise a new one computed level by level. */
+        private static TreeGeometry treeGeometry(FractalControl handle, int levels, double angleDeg, double scale) {
+            TreeGeometry geometry = treeGeometry.get();
+            if (geometry != null && geometry.serves(levels, angleDeg, scale)) return geometry;
+
+            TreeGeometry g = new TreeGeometry(levels, angleDeg, scale);
+            for (int l = 0; l < levels && !handle.dead(); l++) {
+                int level = l;
+                handle.pool.invoke(new RangeTask(handle, TreeGeometry.first(l), TreeGeometry.first(l + 1),
+                        Math.max(treeChunk, 1024), (from, to) -> g.compute(level, from, to)));
+            }
+            if (!handle.dead()) treeGeometry = new SoftReference<>(g);
+            return g;
+        }
+
+        /**
+         * Transforms the geometry into pixel lines with the trunk at (x, y) and
+         * {@code length} pixels long, level by level. Each chunk of a level is
+         * published as one range; in slow mode every line is published on its own
+         * and a level is split into single branches.
+         */
+        private static void drawTree(FractalControl handle, TreeGeometry geometry,
+                                     int x, int y, double length)
+        {
+            int chunk = slowMode ? 1 : treeChunk;
+            for (int l = 0; l < handle.lines.levels && !handle.dead(); l++) {
+                int level = l;
+                handle.pool.invoke(new RangeTask(handle, TreeGeometry.first(l), TreeGeometry.first(l + 1), chunk,
+                        (from, to) -> {
+                            int drawn = drawBranches(handle, geometry, level, from, to, x, y, length);
+                            if (!slowMode && !handle.dead()) publish(handle, from, to, drawn);
+                        }));
+            }
+        }
+
+        /**
+         * Stores the lines of branches [from, to) of one level and returns how many
+         * were drawn. A branch starts at the rounded end of its parent, and one
+         * whose parent was skipped is skipped as well.
+         */
+        private static int drawBranches(FractalControl handle, TreeGeometry geometry,
+                                         int level, int from, int to,
+                                         int x, int y, double length)
+        {
+            LineBuffer lines = handle.lines;
+            int color = (lines.levels - level < 5) ? LEAF_ARGB : TRUNK_ARGB;
+            boolean tip = level == lines.levels - 1 && lines.splat != null;
+
+            int drawn = 0;
+            for (int i = from; i < to; i++) {
+                int x1 = x, y1 = y;
+                if (i > 0) {
+                    int parent = (i - 1) >> 1;
+                    if (lines.argb[parent] == 0) continue;
+                    x1 = lines.x2[parent];
+                    y1 = lines.y2[parent];
+                }
+                if (!lines.claim(x1, y1, TreeGeometry.turn(i, level), level)) continue;
+
+                if (slowMode) pause(handle, SLOW_MODE_NANOS);
+
+                lines.set(i, x1, y1,
+                        x + (int) Math.round(geometry.x[i] * length),
+                        y + (int) Math.round(geometry.y[i] * length),
+                        color);
+                if (tip) lines.splat[i] = 1;
+                drawn++;
+                if (slowMode) publish(handle, i, i + 1, 1);
+            }
+            return drawn;
+        }
+
+        /**
+         * Splits [from, to) in halves down to {@code chunk} indices and runs the
+         * body on each piece, in the render's pool. Work queued for a dead render
+         * is dropped before it starts.
+         */
+        private static final class RangeTask extends RecursiveAction {
+            interface Body { void run(int from, int to); }
+
+            private final FractalControl handle;
+            private final int from, to, chunk;
+            private final Body body;
+
+            RangeTask(FractalControl handle, int from, int to, int chunk, Body body) {
+                this.handle = handle;
+                this.from = from;
+                this.to = to;
+                this.chunk = chunk;
+                this.body = body;
+                handle.metrics.taskSubmitted();
+            }
+
+            @Override protected void compute() {
+                try {
+                    if (handle.dead()) return;
+                    if (to - from > chunk) {
+                        int mid = (from + to) >>> 1;
+                        RangeTask left = new RangeTask(handle, from, mid, chunk, body);
+                        left.fork();
+                        new RangeTask(handle, mid, to, chunk, body).compute();
+                        left.join();
+                    } else {
+                        long t0 = System.nanoTime();
+                        body.run(from, to);
+                        handle.metrics.busy(System.nanoTime() - t0);
+                    }
+                } finally {
+                    handle.metrics.taskCompleted();
+                }
+            }
+        }
+
+        private static final long SLOW_MODE_NANOS = 100_000_000L;
+        private static final long PAUSE_SLICE_NANOS = 5_000_000L;
+
+        /** The slowMode delay, cut short as soon as the render is dead. */
+        private static void pause(FractalControl handle, long nanos) {
+            long deadline = System.nanoTime() + nanos;
+            for (long left; (left = deadline - System.nanoTime()) > 0 && !handle.dead(); ) {
+                LockSupport.parkNanos(Math.min(left, PAUSE_SLICE_NANOS));
+            }
+        }
+
+        /** Publishes slots [from, to), of which {@code drawn} hold lines; skipped slots are no work done. */
+        private static void publish(FractalControl handle, int from, int to, int drawn) {
+            offer(handle, range(from, to), drawn);
+        }
+
+        /** Hands one record to the UI and counts the units it completes. */
+        private static void offer(FractalControl handle, long record, long units) {
+            try {
+                handle.queue.offer(record, handle.pool);
+                handle.metrics.published(units);
+            } catch (InterruptedException ignored) {}
+        }
+
+        
+        /** Pixel spacing below which plain double coordinates break down. */
+        static final double DEEP_ZOOM_SPACING = 1e-13;
+        /**
+         * The same for double-double, below which only perturbation is left. Far
+         * above its ulp: orbits this deep run tens of thousands of steps, and
+         * from about 1e-21 on they drift visibly from exact BigDecimal orbits.
+         */
+        static final double DOUBLE_DOUBLE_SPACING = 1e-20;
+
+        /**
+         * Frame pixels up to which double-double beats perturbation. The reference
+         * orbit is maxIter sequential BigDecimal steps, each costing about what
+         * double-double adds over perturbation to one step of a few thousand
+         * pixels per worker, hence 8 * 4096. The figure is a constant on purpose,
+         * not derived from the worker count: the tier must not depend on the
+         * scheduler, so a frame renders the same on every machine, in every
+         * scheduler mode and on every worker JVM of a distributed render.
+         */
+        static final long REFERENCE_PIXELS = 8 * 4096;
+
+        /**
+         * Arithmetic a Mandelbrot/Julia frame is iterated in, cheapest first. A
+         * tier holds while the pixel spacing stays above its limit, well clear of
+         * its rounding error, and a frame gets the first tier that holds.
+         * FLOAT and DOUBLE frames sit on the pixel lattice; the deeper tiers are
+         * sampled as offsets from the frame's centre.
+         */
+        enum Precision {
+            /**
+             * Single precision: twice the SIMD lanes of double. Its rounding compounds
+             * over far fewer bits, hence the wider margin. Mandelbrot only, since
+             * rounding a Julia constant to float moves the whole set.
+             */
+            FLOAT(1e-3),
+            DOUBLE(DEEP_ZOOM_SPACING),
+            /** Unevaluated sums of two doubles, about 106 bits; scalar only. */
+            DOUBLE_DOUBLE(DOUBLE_DOUBLE_SPACING),
+            /** Double offsets from a BigDecimal reference orbit, down to MIN_SCALE. */
+            PERTURBATION(0.0);
+
+            /** Smallest pixel spacing this tier still resolves. */
+            final double minSpacing;
+
+            Precision(double minSpacing) { this.minSpacing = minSpacing; }
+
+            boolean lattice() { return compareTo(DOUBLE) <= 0; }
+
+            @Override public String toString() { return name().toLowerCase(Locale.ROOT).replace('_', '-'); }
+        }
+
+        /** Cheapest tier a render may use; the default FLOAT lets every tier be picked. */
+        private static volatile Precision minPrecision = Precision.valueOf(
+                System.getProperty("fractal.precision", "float").toUpperCase(Locale.ROOT).replace('-', '_'));
+
+        static void setMinPrecision(Precision p) { minPrecision = p; }
+
+        /**
+         * The tier a w x h frame at this scale is iterated in. Double-double
+         * resolves everything perturbation does down to its limit, but costs about
+         * twice as much per step, so it only wins on frames too small to pay for
+         * the reference orbit.
+         */
+        static Precision precision(FractalType type, double scale, int w, int h) {
+            Precision floor = minPrecision;
+            if (type == FractalType.JULIA && floor == Precision.FLOAT) floor = Precision.DOUBLE;
+            double spacing = scale / w;
+            for (Precision p : Precision.values()) {
+                if (p.compareTo(floor) < 0 || spacing < p.minSpacing) continue;
+                if (p == Precision.DOUBLE_DOUBLE && p != floor
+                        && (long) w * h > REFERENCE_PIXELS) continue;
+                return p;
+            }
+            return Precision.PERTURBATION;
+        }
+
+        /** Deltas are plain doubles, so zooming stops short of their exponent range. */
+        static final double MIN_SCALE = 1e-290;
+
+        private static final BigDecimal TWO = BigDecimal.valueOf(2);
+
+        /**
+         * One orbit computed in BigDecimal at the view centre and stored as doubles.
+         * Every pixel is then iterated as a small double offset from it.
+         */
+        static final class ReferenceOrbit {
+            final double[] zr, zi;
+            final int length;
+
+            private ReferenceOrbit(double[] zr, double[] zi, int length) {
+                this.zr = zr;
+                this.zi = zi;
+                this.length = length;
+            }
+
+            /**
+             * Iterates until the reference escapes or maxIter is reached. At least two
+             * points are always stored so that a pixel can take one step before rebasing.
+             */
+            static ReferenceOrbit compute(
+                    FractalControl handle,
+                    FractalType type,
+                    BigDecimal centerX, BigDecimal centerY,
+                    double scale, int maxIter,
+                    double juliaRe, double juliaIm)
+            {
+                int digits = Math.max(20, (int) Math.ceil(-Math.log10(scale)) + 20);
+                MathContext mc = new MathContext(digits);
+
+                BigDecimal zr, zi, cr, ci;
+                if (type == FractalType.JULIA) {
+                    zr = centerX; zi = centerY;
+                    cr = new BigDecimal(juliaRe); ci = new BigDecimal(juliaIm);
+                } else {
+                    zr = BigDecimal.ZERO; zi = BigDecimal.ZERO;
+                    cr = centerX; ci = centerY;
+                }
+
+                double[] or = new double[maxIter + 1];
+                double[] oi = new double[maxIter + 1];
+                int n = 0;
+                for (;;) {
+                    or[n] = zr.doubleValue();
+                    oi[n] = zi.doubleValue();
+                    if (n == maxIter || (n > 0 && or[n] * or[n] + oi[n] * oi[n] > 4.0)) break;
+                    if ((n & 1023) == 0 && handle.dead()) break;
+
+                    BigDecimal nzr = zr.multiply(zr, mc).subtract(zi.multiply(zi, mc), mc).add(cr, mc);
+                    BigDecimal nzi = TWO.multiply(zr, mc).multiply(zi, mc).add(ci, mc);
+                    zr = nzr;
+                    zi = nzi;
+                    n++;
+                }
+                return new ReferenceOrbit(or, oi, Math.max(2, n + 1));
+            }
+        }
+
+        /**
+         * Perturbation kernel: iterates the offset d of a pixel from the reference orbit
+         * Z with d' = 2Zd + d^2 + dc, so only d needs to be representable in a double.
+         * Glitches are caught with Zhuoran's criterion: once |Z + d| drops below |d|,
+         * or the reference runs out, the pixel is rebased onto the start of the orbit.
+         */
+        private static float perturbed(ReferenceOrbit ref,
+                                     double dr, double di,
+                                     double dcr, double dci,
+                                     int maxIter, CancelToken token)
+        {
+            double[] rr = ref.zr, ri = ref.zi;
+            int last = ref.length - 1;
+            int m = 0;
+            double zr = rr[0] + dr, zi = ri[0] + di;
+            int i = 0;
+
+            while (i < maxIter && (zr * zr + zi * zi) <= 4.0) {
+                double ar = rr[m], ai = ri[m];
+                double ndr = 2 * (ar * dr - ai * di) + (dr * dr - di * di) + dcr;
+                double ndi = 2 * (ar * di + ai * dr) + 2 * dr * di + dci;
+                dr = ndr;
+                di = ndi;
+                m++;
+                i++;
+                if ((i & CHECK_MASK) == 0 && token.dead()) return INTERIOR;
+
+                zr = rr[m] + dr;
+                zi = ri[m] + di;
+                if (m == last || zr * zr + zi * zi < dr * dr + di * di) {
+                    dr = zr - rr[0];
+                    di = zi - ri[0];
+                    m = 0;
+                }
+            }
+            return smooth(i, maxIter, zr, zi);
+        }
+
+        /** Edge of the tiles a frame is cut into before any adaptive split. */
+        private static final int TILE = 64;
+        /** Tiles are never split below this edge. */
+        private static final int MIN_TILE = 16;
+        /** Estimated iterations above which a tile is split into quadrants. */
+        private static final long SPLIT_WORK = 1L << 22;
+        /** Mariani–Silver rectangles at or below this area are iterated pixel by pixel. */
+        private static final int MS_MIN_AREA = 64;
+
+        /*
+         * Dirty rectangles are published as x, y, w, h packed into 16 bits each.
+         */
+        static long rect(int x, int y, int w, int h) {
+            return ((long) x << 48) | ((long) y << 32) | ((long) w << 16) | h;
+        }
+        static int rectX(long record) { return (int) (record >>> 48) & 0xFFFF; }
+        static int rectY(long record) { return (int) (record >>> 32) & 0xFFFF; }
+        static int rectW(long record) { return (int) (record >>> 16) & 0xFFFF; }
+        static int rectH(long record) { return (int) record & 0xFFFF; }
+
+        /** Identifies one {@link #TILE} x {@link #TILE} tile of the global pixel lattice. */
+        record TileKey(FractalType type,
+                       double juliaRe, double juliaIm,
+                       int maxIter, Precision precision, double step,
+                       long tx, long ty) {}
+
+        /**
+         * Size-bounded LRU cache of per-tile iteration counts, shared by all renders.
+         * Evicted tiles can optionally be spilled to a directory and are read back
+         * on a later miss. Tiles are stored as raw smooth counts, so a cached tile
+         * can be recoloured with any palette.
+         */
+        static final class TileCache {
+            private static final long TILE_BYTES = (long) TILE * TILE * Float.BYTES;
+
+            private final long maxBytes;
+            private final Path spillDir;
+            private final int maxSpilled;
+            private final LinkedHashMap<TileKey, float[]> tiles = new LinkedHashMap<>(256, 0.75f, true);
+            private final LinkedHashMap<TileKey, Path> spilled = new LinkedHashMap<>(256, 0.75f, true);
+            private long spillSeq;
+
+            private final LongAdder hits = new LongAdder();
+            private final LongAdder diskHits = new LongAdder();
+            private final LongAdder misses = new LongAdder();
+            private final LongAdder evictions = new LongAdder();
+
+            /** @param spillDir where evicted tiles go, or null to drop them */
+            TileCache(long maxBytes, Path spillDir, int maxSpilled) {
+                this.maxBytes = maxBytes;
+                this.spillDir = spillDir;
+                this.maxSpilled = maxSpilled;
+            }
+
+            float[] get(TileKey key) {
+                Path file;
+                synchronized (this) {
+                    float[] t = tiles.get(key);
+                    if (t != null) { hits.increment(); return t; }
+                    file = spilled.remove(key);
+                }
+                float[] t = (file != null) ? readSpilled(file) : null;
+                if (t == null) { misses.increment(); return null; }
+                diskHits.increment();
+                put(key, t);
+                return t;
+            }
+
+            void put(TileKey key, float[] tile) {
+                List<Map.Entry<TileKey, float[]>> evicted = new ArrayList<>();
+                synchronized (this) {
+                    tiles.put(key, tile);
+                    Iterator<Map.Entry<TileKey, float[]>> it = tiles.entrySet().iterator();
+                    while (tiles.size() * TILE_BYTES > maxBytes && it.hasNext()) {
+                        evicted.add(it.next());
+                        it.remove();
+                    }
+                }
+                evictions.add(evicted.size());
+                if (spillDir != null) {
+                    for (Map.Entry<TileKey, float[]> e : evicted) spill(e.getKey(), e.getValue());
+                }
+            }
+
+            private void spill(TileKey key, float[] tile) {
+                Path file;
+                List<Path> dropped = new ArrayList<>();
+                synchronized (this) {
+                    file = spillDir.resolve("tile-" + (spillSeq++) + ".bin");
+                }
+                try {
+                    Files.createDirectories(spillDir);
+                    ByteBuffer buf = ByteBuffer.allocate(tile.length * Float.BYTES);
+                    buf.asFloatBuffer().put(tile);
+                    try (FileChannel ch = FileChannel.open(file,
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                        while (buf.hasRemaining()) ch.write(buf);
+                    }
+                } catch (IOException e) {
+                    return;
+                }
+                synchronized (this) {
+                    spilled.put(key, file);
+                    Iterator<Path> it = spilled.values().iterator();
+                    while (spilled.size() > maxSpilled && it.hasNext()) {
+                        dropped.add(it.next());
+                        it.remove();
+                    }
+                }
+                for (Path p : dropped) {
+                    try { Files.deleteIfExists(p); } catch (IOException ignored) {}
+                }
+            }
+
+            private static float[] readSpilled(Path file) {
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                    ByteBuffer buf = ByteBuffer.allocate((int) ch.size());
+                    while (buf.hasRemaining() && ch.read(buf) >= 0) {}
+                    buf.flip();
+                    float[] tile = new float[TILE * TILE];
+                    buf.asFloatBuffer().get(tile);
+                    return tile;
+                } catch (IOException | BufferUnderflowException e) {
+                    return null;
+                } finally {
+                    try { Files.deleteIfExists(file); } catch (IOException ignored) {}
+                }
+            }
+
+            long hits() { return hits.sum(); }
+            long diskHits() { return diskHits.sum(); }
+            long misses() { return misses.sum(); }
+            long evictions() { return evictions.sum(); }
+            synchronized int size() { return tiles.size(); }
+            synchronized int spilledSize() { return spilled.size(); }
+        }
+
+        private static volatile TileCache tileCache = defaultTileCache();
+
+        /** null turns tile caching off. */
+        static void setTileCache(TileCache cache) { tileCache = cache; }
+
+        static TileCache tileCache() { return tileCache; }
+
+        private static TileCache defaultTileCache() {
+            long mb = Long.getLong("fractal.tileCacheMB", 64);
+            if (mb <= 0) return null;
+            String dir = System.getProperty("fractal.tileCacheDir");
+            return new TileCache(mb << 20, (dir == null) ? null : Path.of(dir), 4096);
+        }
+
+        /**
+         * Pixel-to-plane mapping of one Mandelbrot/Julia frame. Shallow frames sit
+         * on a global lattice of spacing {@code step}: pixel (x, y) is lattice point
+         * (originX + x, originY + y), so frames that share a step share tiles. Deep
+         * zooms sample offsets from the frame's centre instead, added to the
+         * double-double centre or iterated against a reference orbit. A band of a taller frame (see generateBand) is a
+         * plane whose originY starts at its first row of the frameH-row frame.
+         */
+        private record Plane(
+                FractalType type,
+                int w, int h, int frameH,
+                int maxIter,
+                Precision precision,
+                long originX, long originY, double step,
+                double scaleX, double scaleY,
+                double juliaRe, double juliaIm,
+                ReferenceOrbit orbit,
+                double[] centre,
+                int[] lut,
+                TileCache cache,
+                boolean[] cached,
+                CancelToken token,
+                Seed seed)
+        {
+            double re(int x) { return (originX + x) * step; }
+            double im(int y) { return (originY + y) * step; }
+
+            TileKey tileKey(int x, int y) {
+                boolean julia = (type == FractalType.JULIA);
+                return new TileKey(type, julia ? juliaRe : 0, julia ? juliaIm : 0, maxIter, precision, step,
+                        Math.floorDiv(originX + x, TILE), Math.floorDiv(originY + y, TILE));
+            }
+
+            /** Index of the frame tile holding pixel (x, y) in {@link #cached}, row by row. */
+            int tileIndex(int x, int y) {
+                long tx = Math.floorDiv(originX + x, TILE) - Math.floorDiv(originX, TILE);
+                long ty = Math.floorDiv(originY + y, TILE) - Math.floorDiv(originY, TILE);
+                return (int) (ty * tiles(originX, w) + tx);
+            }
+
+            /** Lattice tiles touched by n pixels starting at lattice index origin. */
+            static int tiles(long origin, int n) {
+                return (int) (Math.floorDiv(origin + n - 1, TILE) - Math.floorDiv(origin, TILE) + 1);
+            }
+
+            /** Smooth iteration count of pixel (x, y). */
+            float sample(int x, int y) { return sample(x, y, 0.0, 0.0); }
+
+            /** Smooth iteration count at (x + jx, y + jy), offsets in pixels. */
+            float sample(int x, int y, double jx, double jy) {
+                if (!precision.lattice()) {
+                    double dx = ((x + jx) / (double)(w - 1) - 0.5) * scaleX;
+                    double dy = ((originY + y + jy) / (double)(frameH - 1) - 0.5) * scaleY;
+                    if (orbit == null) return doubleDouble(type, centre, dx, dy, juliaRe, juliaIm, maxIter, token);
+                    return (type == FractalType.JULIA)
+                            ? perturbed(orbit, dx, dy, 0, 0, maxIter, token)
+                            : perturbed(orbit, 0, 0, dx, dy, maxIter, token);
+                }
+
+                double real = (originX + x + jx) * step;
+                double imag = (originY + y + jy) * step;
+
+                if (precision == Precision.FLOAT) {
+                    return switch (type) {
+                        case MANDELBROT -> mandelbrotFloat((float) real, (float) imag, maxIter, token);
+                        case JULIA -> juliaFloat((float) real, (float) imag,
+                                (float) juliaRe, (float) juliaIm, maxIter, token);
+                        default -> INTERIOR;
+                    };
+                }
+                return switch (type) {
+                    case MANDELBROT -> mandelbrot(real, imag, maxIter, token);
+                    case JULIA -> julia(real, imag, juliaRe, juliaIm, maxIter, token);
+                    default -> INTERIOR;
+                };
+            }
+        }
+
+        /**
+         * A rectangle of the frame. Large rectangles are cut along lattice tile
+         * boundaries down to single {@link #TILE} tiles. The first pass looks each
+         * tile up in the tile cache; a hit is final, so the later passes skip it.
+         * A tile whose probe samples land in the set interior is split again so
+         * that the expensive parts of the frame are spread over more workers.
+         *
+         * <p>A preview pass ({@code block > 1}) only samples one lattice pixel per
+         * block; pixels sampled by the previous, coarser pass are never iterated
+         * again.
+         */
+        private static final class TileTask extends RecursiveAction {
+            private final FractalControl handle;
+            private final Plane plane;
+            private final int x0, y0, tw, th;
+            private final boolean subTile;
+            private final int block, coarser;
+
+            /**
+             * @param block   1 for the full-resolution pass, else the preview block edge
+             * @param coarser block edge of the pass that already ran, or 0
+             */
+            TileTask(FractalControl handle, Plane plane,
+                     int x0, int y0, int tw, int th,
+                     int block, int coarser)
+            {
+                this(handle, plane, x0, y0, tw, th, false, block, coarser);
+            }
+
+            private TileTask(FractalControl handle, Plane plane,
+                             int x0, int y0, int tw, int th, boolean subTile,
+                             int block, int coarser)
+            {
+                this.handle = handle;
+                this.plane = plane;
+                this.x0 = x0; this.y0 = y0;
+                this.tw = tw; this.th = th;
+                this.subTile = subTile;
+                this.block = block;
+                this.coarser = coarser;
+                handle.metrics.taskSubmitted();
+            }
+
+            private TileTask part(int x, int y, int w, int h, boolean sub) {
+                return new TileTask(handle, plane, x, y, w, h, sub, block, coarser);
+            }
+
+            /** True if the coarser pass already sampled pixel (x, y), or the seed provided it. */
+            private boolean known(int x, int y) {
+                if (coarser > 0
+                        && Math.floorMod(plane.originX() + x, coarser) == 0
+                        && Math.floorMod(plane.originY() + y, coarser) == 0) return true;
+                Seed seed = plane.seed();
+                return seed != null && !Float.isNaN(seed.values[y * plane.w() + x]);
+            }
+
+            @Override protected void compute() {
+                try {
+                    tile();
+                } finally {
+                    handle.metrics.taskCompleted();
+                }
+            }
+
+            private void tile() {
+                if (handle.dead()) return;
+
+                long tx0 = Math.floorDiv(plane.originX() + x0, TILE);
+                long tx1 = Math.floorDiv(plane.originX() + x0 + tw - 1, TILE);
+                long ty0 = Math.floorDiv(plane.originY() + y0, TILE);
+                long ty1 = Math.floorDiv(plane.originY() + y0 + th - 1, TILE);
+
+                if (!subTile && (tx1 > tx0 || ty1 > ty0)) {
+                    if (tx1 - tx0 >= ty1 - ty0) {
+                        int split = (int) ((tx0 + (tx1 - tx0 + 1) / 2) * TILE - plane.originX());
+                        invokeAll(part(x0, y0, split - x0, th, false),
+                                  part(split, y0, x0 + tw - split, th, false));
+                    } else {
+                        int split = (int) ((ty0 + (ty1 - ty0 + 1) / 2) * TILE - plane.originY());
+                        invokeAll(part(x0, y0, tw, split - y0, false),
+                                  part(x0, split, tw, y0 + th - split, false));
+                    }
+                    return;
+                }
+
+                // the first pass looks every tile up once; later passes skip the ones it loaded
+                boolean whole = !subTile && plane.cache() != null;
+                if (whole && coarser > 0 && plane.cached()[plane.tileIndex(x0, y0)]) return;
+
+                // no event object at all unless a recording asks for tile events
+                TileEvent event = TILE_EVENT.isEnabled() ? new TileEvent() : null;
+                if (event != null) event.begin();
+                long t0 = System.nanoTime();
+
+                TileKey key = whole ? plane.tileKey(x0, y0) : null;
+                if (key != null && coarser == 0 && loadCached(key)) {
+                    plane.cached()[plane.tileIndex(x0, y0)] = true;
+                    leafDone(event, t0, true);
+                    return;
+                }
+
+                if (block > 1) {
+                    renderPreview();
+                    leafDone(event, t0, false);
+                    return;
+                }
+
+                if (tw >= 2 * MIN_TILE && th >= 2 * MIN_TILE && estimatedWork() > SPLIT_WORK) {
+                    int hw = tw / 2, hh = th / 2;
+                    invokeAll(part(x0, y0, hw, hh, true),
+                              part(x0 + hw, y0, tw - hw, hh, true),
+                              part(x0, y0 + hh, hw, th - hh, true),
+                              part(x0 + hw, y0 + hh, tw - hw, th - hh, true));
+                } else {
+                    render();
+                    leafDone(event, t0, false);
+                }
+
+                // only whole tiles are kept; partial edge tiles are recomputed next time
+                if (key != null && tw == TILE && th == TILE && !handle.dead()) {
+                    float[] tile = new float[TILE * TILE];
+                    for (int j = 0; j < TILE; j++) {
+                        System.arraycopy(handle.iterations, (y0 + j) * plane.w() + x0, tile, j * TILE, TILE);
+                    }
+                    plane.cache().put(key, tile);
+                }
+            }
+
+            /** Books the worker time of a leaf and emits its JFR event, if there is one. */
+            private void leafDone(TileEvent event, long t0, boolean cached) {
+                handle.metrics.busy(System.nanoTime() - t0);
+                if (event == null) return;
+                event.end();
+                if (event.shouldCommit()) {
+                    event.x = x0; event.y = y0;
+                    event.width = tw; event.height = th;
+                    event.block = block;
+                    event.cached = cached;
+                    event.commit();
+                }
+            }
+
+            /** Copies this rectangle out of a cached tile; false on a miss. */
+            private boolean loadCached(TileKey key) {
+                float[] tile = plane.cache().get(key);
+                if (tile == null) return false;
+
+                int w = plane.w();
+                int[] lut = plane.lut();
+                int sx = (int) (plane.originX() + x0 - key.tx() * TILE);
+                int sy = (int) (plane.originY() + y0 - key.ty() * TILE);
+                for (int j = 0; j < th; j++) {
+                    int src = (sy + j) * TILE + sx;
+                    int dst = (y0 + j) * w + x0;
+                    for (int i = 0; i < tw; i++) {
+                        float mu = tile[src + i];
+                        handle.iterations[dst + i] = mu;
+                        handle.pixels[dst + i] = Palette.color(mu, lut);
+                    }
+                }
+
+                offer(handle, rect(x0, y0, tw, th), (long) tw * th);
+                return true;
+            }
+
+            /** Interior probes cost maxIter each; escaped ones are treated as free. */
+            private long estimatedWork() {
+                int inside = 0;
+                for (int j = 0; j < 3; j++) {
+                    for (int i = 0; i < 3; i++) {
+                        int px = x0 + (tw - 1) * i / 2;
+                        int py = y0 + (th - 1) * j / 2;
+                        if (plane.sample(px, py) == INTERIOR) inside++;
+                    }
+                }
+                return (long) tw * th * plane.maxIter() * inside / 9;
+            }
+
+            private void render() {
+                if (marianiSilver) {
+                    renderSubdivided();
+                } else {
+                    iterate(x0, y0, x0 + tw, y0 + th);
+                }
+                if (handle.dead()) return;
+
+                offer(handle, rect(x0, y0, tw, th), (long) tw * th);
+            }
+
+            /**
+             * Samples the lattice pixels of this tile that fall on the block grid and
+             * paints each block with its colour. Blocks are lattice-aligned, so they
+             * never straddle a tile.
+             */
+            private void renderPreview() {
+                int[] pixels = handle.pixels;
+                float[] iterations = handle.iterations;
+                int[] lut = plane.lut();
+                int w = plane.w();
+                int bx = x0 + tw, by = y0 + th;
+                int fx = x0 + Math.floorMod(-(plane.originX() + x0), block);
+                int fy = y0 + Math.floorMod(-(plane.originY() + y0), block);
+
+                for (int y = fy; y < by; y += block) {
+                    if (handle.dead()) return;
+                    for (int x = fx; x < bx; x += block) {
+                        // the coarser pass already painted this block with the right colour
+                        if (known(x, y)) continue;
+
+                        float mu = plane.sample(x, y);
+                        iterations[y * w + x] = mu;
+                        int rgb = Palette.color(mu, lut);
+                        int ex = Math.min(x + block, bx);
+                        for (int yy = y; yy < Math.min(y + block, by); yy++) {
+                            Arrays.fill(pixels, yy * w + x, yy * w + ex, rgb);
+                        }
+                    }
+                }
+
+                // preview colours are provisional, the final pass counts these pixels
+                offer(handle, rect(x0, y0, tw, th), 0);
+            }
+
+            /** Iterates every pixel of [ax, bx) x [ay, by) not sampled by a coarser pass. */
+            private void iterate(int ax, int ay, int bx, int by) {
+                EscapeKernel kernel = vectorKernel ? VECTOR_KERNEL : null;
+                if (kernel != null && plane.precision().lattice()) {
+                    iterateBatched(kernel, ax, ay, bx, by);
+                    return;
+                }
+
+                int[] pixels = handle.pixels;
+                float[] iterations = handle.iterations;
+                int[] lut = plane.lut();
+                int w = plane.w();
+
+                for (int y = ay; y < by; y++) {
+                    if (handle.dead()) return;
+                    int row = y * w;
+                    for (int x = ax; x < bx; x++) {
+                        if (known(x, y)) continue;
+                        float mu = plane.sample(x, y);
+                        iterations[row + x] = mu;
+                        pixels[row + x] = Palette.color(mu, lut);
+                    }
+                }
+            }
+
+            /**
+             * Gathers the pixels of the rectangle into batches for the SIMD kernel.
+             * Cardioid/bulb points are settled up front; the batched kernel has no
+             * periodicity check, which only ever shortens interior orbits.
+             */
+            private void iterateBatched(EscapeKernel kernel, int ax, int ay, int bx, int by) {
+                int[] pixels = handle.pixels;
+                float[] iterations = handle.iterations;
+                int w = plane.w();
+                int maxIter = plane.maxIter();
+                boolean julia = plane.type() == FractalType.JULIA;
+                boolean single = plane.precision() == Precision.FLOAT;
+                Batch b = BATCH.get();
+                int n = 0;
+
+                for (int y = ay; y < by; y++) {
+                    if (handle.dead()) return;
+                    double imag = plane.im(y);
+                    for (int x = ax; x < bx; x++) {
+                        if (known(x, y)) continue;
+                        double real = plane.re(x);
+                        if (!julia && inCardioidOrBulb(real, imag)) {
+                            iterations[y * w + x] = INTERIOR;
+                            pixels[y * w + x] = 0x000000;
+                            continue;
+                        }
+                        if (julia) {
+                            b.zr[n] = real; b.zi[n] = imag;
+                            b.cr[n] = plane.juliaRe(); b.ci[n] = plane.juliaIm();
+                        } else {
+                            b.zr[n] = 0; b.zi[n] = 0;
+                            b.cr[n] = real; b.ci[n] = imag;
+                        }
+                        b.index[n++] = y * w + x;
+                        if (n == Batch.SIZE) {
+                            b.flush(kernel, handle, plane.lut(), n, maxIter, single);
+                            n = 0;
+                        }
+                    }
+                }
+                b.flush(kernel, handle, plane.lut(), n, maxIter, single);
+            }
+
+            /*
+             * Mariani–Silver: once the border of a rectangle is known and every border
+             * pixel is INTERIOR in the iteration buffer, the whole rectangle is
+             * interior, because Mandelbrot and connected Julia sets have no holes.
+             * Only that case is filled, so the output matches the per-pixel path;
+             * escaped pixels are never extrapolated since smooth colouring makes
+             * them differ even at equal iteration counts.
+             */
+            private void renderSubdivided() {
+                int bx = x0 + tw, by = y0 + th;
+                iterate(x0, y0, bx, y0 + 1);
+                iterate(x0, by - 1, bx, by);
+                iterate(x0, y0 + 1, x0 + 1, by - 1);
+                iterate(bx - 1, y0 + 1, bx, by - 1);
+                subdivide(x0, y0, bx, by);
+            }
+
+            /** Resolves the inside of [ax, bx) x [ay, by), whose border is already computed. */
+            private void subdivide(int ax, int ay, int bx, int by) {
+                if (bx - ax <= 2 || by - ay <= 2 || handle.dead()) return;
+
+                if (borderIsInterior(ax, ay, bx, by)) {
+                    int w = plane.w();
+                    for (int y = ay + 1; y < by - 1; y++) {
+                        Arrays.fill(handle.iterations, y * w + ax + 1, y * w + bx - 1, INTERIOR);
+                        Arrays.fill(handle.pixels, y * w + ax + 1, y * w + bx - 1, 0x000000);
+                    }
+                    return;
+                }
+
+                if ((bx - ax) * (by - ay) <= MS_MIN_AREA) {
+                    iterate(ax + 1, ay + 1, bx - 1, by - 1);
+                    return;
+                }
+
+                int mx = (ax + bx) >>> 1, my = (ay + by) >>> 1;
+                iterate(mx, ay + 1, mx + 1, by - 1);
+                iterate(ax + 1, my, mx, my + 1);
+                iterate(mx + 1, my, bx - 1, my + 1);
+
+                subdivide(ax, ay, mx + 1, my + 1);
+                subdivide(mx, ay, bx, my + 1);
+                subdivide(ax, my, mx + 1, by);
+                subdivide(mx, my, bx, by);
+            }
+
+            private boolean borderIsInterior(int ax, int ay, int bx, int by) {
+                float[] mu = handle.iterations;
+                int w = plane.w();
+                int top = ay * w, bottom = (by - 1) * w;
+                for (int x = ax; x < bx; x++) {
+                    if (mu[top + x] != INTERIOR || mu[bottom + x] != INTERIOR) return false;
+                }
+                for (int y = ay + 1; y < by - 1; y++) {
+                    if (mu[y * w + ax] != INTERIOR || mu[y * w + bx - 1] != INTERIOR) return false;
+                }
+                return true;
+            }
+        }
+
+        /** Per-worker staging arrays for {@link EscapeKernel} batches. */
+        private static final class Batch {
+            static final int SIZE = 256;
+
+            final double[] zr = new double[SIZE], zi = new double[SIZE];
+            final double[] cr = new double[SIZE], ci = new double[SIZE];
+            final double[] iter = new double[SIZE];
+            final double[] count = new double[SIZE];
+            final int[] index = new int[SIZE];
+            private final float[] fzr = new float[SIZE], fzi = new float[SIZE];
+            private final float[] fcr = new float[SIZE], fci = new float[SIZE];
+            private final float[] fiter = new float[SIZE];
+
+            /**
+             * Runs the kernel in slices of {@link #CHECK_INTERVAL} iterations, checking
+             * the render between slices. Each slice resumes from the z the previous
+             * one stopped at, and escaped points stay escaped, so the result equals
+             * a single call.
+             */
+            void flush(EscapeKernel kernel, FractalControl handle, int[] lut, int n, int maxIter, boolean single) {
+                if (!run(kernel, handle, n, maxIter, single)) return;
+                for (int k = 0; k < n; k++) {
+                    float mu = mu(k, maxIter);
+                    handle.iterations[index[k]] = mu;
+                    handle.pixels[index[k]] = Palette.color(mu, lut);
+                }
+            }
+
+            /**
+             * Iterates the first n points, in single precision if {@code single};
+             * false if the render died first.
+             */
+            boolean run(EscapeKernel kernel, FractalControl handle, int n, int maxIter, boolean single) {
+                if (n == 0) return false;
+                Arrays.fill(count, 0, n, 0.0);
+                if (single) {
+                    for (int k = 0; k < n; k++) {
+                        fzr[k] = (float) zr[k]; fzi[k] = (float) zi[k];
+                        fcr[k] = (float) cr[k]; fci[k] = (float) ci[k];
+                    }
+                }
+                for (int done = 0; done < maxIter; ) {
+                    int slice = Math.min(CHECK_INTERVAL, maxIter - done);
+                    if (single) {
+                        kernel.iterate(fzr, fzi, fcr, fci, fiter, n, slice);
+                        for (int k = 0; k < n; k++) iter[k] = fiter[k];
+                    } else {
+                        kernel.iterate(zr, zi, cr, ci, iter, n, slice);
+                    }
+                    boolean running = false;
+                    for (int k = 0; k < n; k++) {
+                        count[k] += iter[k];
+                        running |= (iter[k] == slice);
+                    }
+                    done += slice;
+                    if (!running) break;
+                    if (handle.dead()) return false;
+                }
+                if (single) {
+                    for (int k = 0; k < n; k++) { zr[k] = fzr[k]; zi[k] = fzi[k]; }
+                }
+                return true;
+            }
+
+            /** Smooth count of point k after {@link #run}. */
+            float mu(int k, int maxIter) { return smooth((int) count[k], maxIter, zr[k], zi[k]); }
+        }
+
+        private static final ThreadLocal<Batch> BATCH = ThreadLocal.withInitial(Batch::new);
+
+        private static void generateSet(
+                FractalControl handle,
+                FractalType type,
+                int w, int h,
+                int top, int frameH,
+                int maxIter,
+                BigDecimal centerX, BigDecimal centerY,
+                double scale,
+                double juliaRe, double juliaIm,
+                Seed seed)
+        {
+            double scaleX = scale;
+            double scaleY = scale * frameH / (double) w;
+
+            Precision precision = precision(type, scale, w, frameH);
+            handle.metrics.precision(precision);
+            ReferenceOrbit orbit = (precision == Precision.PERTURBATION)
+                    ? ReferenceOrbit.compute(handle, type, centerX, centerY, scale, maxIter, juliaRe, juliaIm)
+                    : null;
+            double[] centre = (precision == Precision.DOUBLE_DOUBLE)
+                    ? new double[] { hi(centerX), lo(centerX), hi(centerY), lo(centerY) }
+                    : null;
+
+            // snap the top-left pixel onto the lattice so panned frames line up with cached tiles
+            double step = scaleX / Math.max(1, w - 1);
+            long originX = 0, originY = top;
+            if (precision.lattice()) {
+                originX = latticeOrigin(centerX.doubleValue(), step, w);
+                originY += latticeOrigin(centerY.doubleValue(), step, frameH);
+            }
+
+            int[] lut = palette.table(maxIter);
+            if (seed != null) {
+                for (int i = 0; i < w * h; i++) {
+                    float mu = seed.values[i];
+                    if (Float.isNaN(mu)) continue;
+                    handle.iterations[i] = mu;
+                    handle.pixels[i] = Palette.color(mu, lut);
+                }
+            }
+
+            // seeded values are approximate, so such frames neither read nor feed the cache
+            TileCache cache = (precision.lattice() && seed == null) ? tileCache : null;
+            boolean[] cached = (cache != null)
+                    ? new boolean[Plane.tiles(originX, w) * Plane.tiles(originY, h)]
+                    : null;
+            Plane plane = new Plane(type, w, h, frameH, maxIter, precision,
+                    originX, originY, step, scaleX, scaleY, juliaRe, juliaIm, orbit, centre,
+                    lut, cache, cached, handle.pool, seed);
+
+            // each invoke() joins its whole pass before the next one starts
+            int coarser = 0;
+            if (progressive && seed == null) {
+                for (int block : PREVIEW_BLOCKS) {
+                    if (handle.dead()) return;
+                    handle.pool.invoke(new TileTask(handle, plane, 0, 0, w, h, block, coarser));
+                    coarser = block;
+                }
+            }
+            if (handle.dead()) return;
+            handle.pool.invoke(new TileTask(handle, plane, 0, 0, w, h, 1, coarser));
+
+            int samples = antialias;
+            if (samples > 0 && !handle.dead()) {
+                // a band looks one row past each cut, so it finds the edges the full frame finds
+                float[] above = (top > 0) ? haloRow(handle, plane, -1) : null;
+                float[] below = (top + h < frameH) ? haloRow(handle, plane, h) : null;
+                if (handle.dead()) return;
+                handle.pool.invoke(new RangeTask(handle, 0, h, AA_ROWS,
+                        (from, to) -> antialias(handle, plane, above, below, from, to, samples)));
+            }
+        }
+
+        /** Smooth counts of row y of the plane, just outside a band; only the edge test reads them. */
+        private static float[] haloRow(FractalControl handle, Plane plane, int y) {
+            float[] row = new float[plane.w()];
+            handle.pool.invoke(new RangeTask(handle, 0, row.length, TILE, (from, to) -> {
+                for (int x = from; x < to; x++) row[x] = plane.sample(x, y);
+            }));
+            return row;
+        }
+
+        /**
+         * The anti-aliasing pass over rows [from, to) of a finished frame. A pixel
+         * whose smooth count differs from one of its four neighbours by more than
+         * AA_THRESHOLD, or that borders the interior, is an edge. Every edge first
+         * gets half of {@code samples} extra samples jittered inside its square;
+         * those whose samples disagree with the centre get the other half as well.
+         * The pixel takes the mean colour of its samples. Only the pixels change;
+         * the iteration buffer keeps the centre samples, so edges are found from
+         * those alone, and recolor() shows the single-sample frame. {@code above}
+         * and {@code below} are the rows just outside a band, or null at the top
+         * and bottom of the frame.
+         */
+        private static void antialias(FractalControl handle, Plane plane, float[] above, float[] below,
+                                      int from, int to, int samples) {
+            float[] mu = handle.iterations;
+            int w = plane.w(), h = plane.h();
+
+            int[] edges = new int[64];
+            int n = 0;
+            for (int y = from; y < to; y++) {
+                for (int x = 0; x < w; x++) {
+                    int i = y * w + x;
+                    float m = mu[i];
+                    float up = (y > 0) ? mu[i - w] : (above != null) ? above[x] : m;
+                    float down = (y + 1 < h) ? mu[i + w] : (below != null) ? below[x] : m;
+                    if ((x > 0 && differs(m, mu[i - 1])) || (x + 1 < w && differs(m, mu[i + 1]))
+                            || differs(m, up) || differs(m, down)) {
+                        if (n == edges.length) edges = Arrays.copyOf(edges, 2 * n);
+                        edges[n++] = i;
+                    }
+                }
+            }
+            if (n == 0 || handle.dead()) return;
+
+            Refinement r = new Refinement(handle, plane, edges, n);
+            int first = (samples + 1) / 2;
+            r.sample(1, first, false);
+            r.sample(first + 1, samples, true);
+            if (handle.dead()) return;
+
+            r.store();
+            // refined colours replace final ones, so no units are counted
+            offer(handle, rect(0, from, w, to - from), 0);
+        }
+
+        /** Colour sums of the edge pixels of one anti-aliasing task. */
+        private static final class Refinement {
+            private final FractalControl handle;
+            private final Plane plane;
+            private final int[] edges;
+            private final int n;
+            private final int[] r, g, b, taken;
+            /** Whether a sample of the edge fell on the other side of AA_THRESHOLD from its centre. */
+            private final boolean[] mixed;
+            private final EscapeKernel kernel;
+
+            Refinement(FractalControl handle, Plane plane, int[] edges, int n) {
+                this.handle = handle;
+                this.plane = plane;
+                this.edges = edges;
+                this.n = n;
+                r = new int[n]; g = new int[n]; b = new int[n];
+                taken = new int[n];
+                mixed = new boolean[n];
+                for (int e = 0; e < n; e++) add(e, handle.iterations[edges[e]]);
+                kernel = (vectorKernel && plane.precision().lattice()) ? VECTOR_KERNEL : null;
+            }
+
+            /** Takes samples k in [from, to] of every edge, or of the mixed ones only. */
+            void sample(int from, int to, boolean onlyMixed) {
+                Batch batch = BATCH.get();
+                boolean julia = plane.type() == FractalType.JULIA;
+                int w = plane.w();
+                int queued = 0;
+
+                for (int e = 0; e < n; e++) {
+                    if (onlyMixed && !mixed[e]) continue;
+                    if ((e & 63) == 0 && handle.dead()) return;
+                    int x = edges[e] % w, y = edges[e] / w;
+
+                    // the jitter pattern is fixed per lattice pixel, so tiles, bands and pans agree
+                    long seed = (plane.precision().lattice() ? plane.originX() + x : x) * 0x9E3779B97F4A7C15L
+                            ^ (plane.originY() + y) * 0xC2B2AE3D27D4EB4FL;
+                    seed ^= seed >>> 31;
+                    double sx = (seed >>> 11) * 0x1.0p-53;
+                    double sy = ((seed * 0x94D049BB133111EBL) >>> 11) * 0x1.0p-53;
+
+                    for (int k = from; k <= to; k++) {
+                        // R2 low-discrepancy sequence, shifted per pixel
+                        double jx = sx + k * 0.7548776662466927, jy = sy + k * 0.5698402909980532;
+                        jx -= Math.floor(jx) + 0.5;
+                        jy -= Math.floor(jy) + 0.5;
+
+                        if (kernel == null) {
+                            add(e, plane.sample(x, y, jx, jy));
+                            continue;
+                        }
+                        double real = (plane.originX() + x + jx) * plane.step();
+                        double imag = (plane.originY() + y + jy) * plane.step();
+                        if (!julia && inCardioidOrBulb(real, imag)) {
+                            add(e, INTERIOR);
+                            continue;
+                        }
+                        if (julia) {
+                            batch.zr[queued] = real; batch.zi[queued] = imag;
+                            batch.cr[queued] = plane.juliaRe(); batch.ci[queued] = plane.juliaIm();
+                        } else {
+                            batch.zr[queued] = 0; batch.zi[queued] = 0;
+                            batch.cr[queued] = real; batch.ci[queued] = imag;
+                        }
+                        batch.index[queued++] = e;
+                        if (queued == Batch.SIZE) {
+                            drain(batch, queued);
+                            queued = 0;
+                        }
+                    }
+                }
+                drain(batch, queued);
+            }
+
+            private void drain(Batch batch, int queued) {
+                if (!batch.run(kernel, handle, queued, plane.maxIter(), plane.precision() == Precision.FLOAT)) return;
+                for (int k = 0; k < queued; k++) add(batch.index[k], batch.mu(k, plane.maxIter()));
+            }
+
+            private void add(int e, float mu) {
+                if (taken[e] > 0 && differs(mu, handle.iterations[edges[e]])) mixed[e] = true;
+                int rgb = Palette.color(mu, plane.lut());
+                r[e] += rgb >> 16 & 0xFF;
+                g[e] += rgb >> 8 & 0xFF;
+                b[e] += rgb & 0xFF;
+                taken[e]++;
+            }
+
+            void store() {
+                for (int e = 0; e < n; e++) {
+                    int t = taken[e], half = t / 2;
+                    handle.pixels[edges[e]] = (r[e] + half) / t << 16 | (g[e] + half) / t << 8 | (b[e] + half) / t;
+                }
+            }
+        }
+
+        private static boolean differs(float a, float b) {
+            if (a == INTERIOR || b == INTERIOR) return a != b;
+            return Math.abs(a - b) > AA_THRESHOLD;
+        }
+
+        /** Whether a frame this wide at this scale is sampled off the lattice, relative to its centre. */
+        private static boolean deep(double scale, int w) {
+            return scale / w < Precision.DOUBLE.minSpacing || !minPrecision.lattice();
+        }
+
+        /** Lattice index of the first of n samples spaced step apart and centred on c. */
+        private static long latticeOrigin(double c, double step, int n) {
+            return Math.round((c - step * (n - 1) / 2.0) / step);
+        }
+
+        /**
+         * Where generateSet samples a w x h frame: the plane offset of every
+         * column (axis 0) or row (axis 1) from the frame's centre.
+         */
+        private static double[] sampleOffsets(int axis, int w, int h, BigDecimal center, double scale) {
+            int n = (axis == 0) ? w : h;
+            double[] off = new double[n];
+            if (deep(scale, w)) {
+                double extent = (axis == 0) ? scale : scale * h / (double) w;
+                for (int i = 0; i < n; i++) off[i] = (i / (double) (n - 1) - 0.5) * extent;
+            } else {
+                double step = scale / Math.max(1, w - 1);
+                double c = center.doubleValue();
+                long origin = latticeOrigin(c, step, n);
+                for (int i = 0; i < n; i++) off[i] = (origin + i) * step - c;
+            }
+            return off;
+        }
+
+        /**
+         * Smooth iteration counts carried into a frame from an earlier one, NaN
+         * where the pixel has to be iterated. Built by {@link #reproject}.
+         */
+        static final class Seed {
+            final float[] values;
+            final int count;
+
+            private Seed(float[] values, int count) {
+                this.values = values;
+                this.count = count;
+            }
+
+            /**
+             * Maps a finished frame onto the sample grid of the next one. A new pixel
+             * takes the old value when an old column and an old row each lie within
+             * {@code tolerance} pixels of its sample point. Only pixels the old frame
+             * iterated itself are carried over, so a value is never more than
+             * {@code tolerance} away from where it was computed.
+             */
+            static Seed reproject(float[] old, Seed oldSeed, int w, int h,
+                                  BigDecimal oldX, BigDecimal oldY, double oldScale,
+                                  BigDecimal centerX, BigDecimal centerY, double scale,
+                                  double tolerance)
+            {
+                int[] col = match(sampleOffsets(0, w, h, oldX, oldScale), oldX.subtract(centerX).doubleValue(),
+                        sampleOffsets(0, w, h, centerX, scale), tolerance);
+                int[] row = match(sampleOffsets(1, w, h, oldY, oldScale), oldY.subtract(centerY).doubleValue(),
+                        sampleOffsets(1, w, h, centerY, scale), tolerance);
+
+                float[] values = new float[w * h];
+                Arrays.fill(values, Float.NaN);
+                int count = 0;
+                for (int y = 0; y < h; y++) {
+                    if (row[y] < 0) continue;
+                    for (int x = 0; x < w; x++) {
+                        if (col[x] < 0) continue;
+                        int src = row[y] * w + col[x];
+                        if (oldSeed != null && !Float.isNaN(oldSeed.values[src])) continue;
+                        values[y * w + x] = old[src];
+                        count++;
+                    }
+                }
+                return new Seed(values, count);
+            }
+
+            /**
+             * For each new sample, the old one (shifted by {@code shift}) nearest to
+             * it if that is within tolerance sample spacings, else -1. Both arrays
+             * are ascending.
+             */
+            private static int[] match(double[] old, double shift, double[] now, double tolerance) {
+                int[] src = new int[now.length];
+                double limit = tolerance * Math.abs(now[now.length - 1] - now[0]) / Math.max(1, now.length - 1);
+                int i = 0;
+                for (int j = 0; j < now.length; j++) {
+                    while (i + 1 < old.length && old[i + 1] + shift <= now[j]) i++;
+                    int best = i;
+                    if (i + 1 < old.length
+                            && Math.abs(old[i + 1] + shift - now[j]) < Math.abs(old[i] + shift - now[j])) {
+                        best = i + 1;
+                    }
+                    src[j] = (Math.abs(old[best] + shift - now[j]) <= limit) ? best : -1;
+                }
+                return src;
+            }
+        }
+
+        static float mandelbrot(double cr, double ci, int maxIter) {
+            return mandelbrot(cr, ci, maxIter, CancelToken.NEVER);
+        }
+
+        /** A dead token ends the orbit early; the value returned then is meaningless. */
+        static float mandelbrot(double cr, double ci, int maxIter, CancelToken token) {
+            if (inCardioidOrBulb(cr, ci)) return INTERIOR;
+
+            double eps = periodicityEpsilon;
+            double zr = 0, zi = 0;
+            double zr2 = 0, zi2 = 0;
+            double sr = 0, si = 0;
+            int window = 1, steps = 0;
+            int i = 0;
+
+            while (i < maxIter && (zr2 + zi2) <= 4.0) {
+                zi = 2 * zr * zi + ci;
+                zr = zr2 - zi2 + cr;
+                zr2 = zr * zr;
+                zi2 = zi * zi;
+                i++;
+                if ((i & CHECK_MASK) == 0 && token.dead()) return INTERIOR;
+
+                // Brent: compare against a snapshot taken at doubling intervals
+                if (Math.abs(zr - sr) < eps && Math.abs(zi - si) < eps) return INTERIOR;
+                if (++steps == window) { steps = 0; window <<= 1; sr = zr; si = zi; }
+            }
+            return smooth(i, maxIter, zr, zi);
+        }
+
+        /** Main cardioid and period-2 bulb, both entirely inside the set. */
+        private static boolean inCardioidOrBulb(double cr, double ci) {
+            double xq = cr - 0.25;
+            double ci2 = ci * ci;
+            double q = xq * xq + ci2;
+            if (q * (q + xq) <= 0.25 * ci2) return true;
+
+            double xb = cr + 1.0;
+            return xb * xb + ci2 <= 0.0625;
+        }
+
+        static float julia(double zr, double zi, double cr, double ci, int maxIter) {
+            return julia(zr, zi, cr, ci, maxIter, CancelToken.NEVER);
+        }
+
+        static float julia(double zr, double zi, double cr, double ci, int maxIter, CancelToken token) {
+            double eps = periodicityEpsilon;
+            int i = 0;
+            double zr2 = zr * zr, zi2 = zi * zi;
+            double sr = zr, si = zi;
+            int window = 1, steps = 0;
+
+            while (i < maxIter && (zr2 + zi2) <= 4.0) {
+                double nzr = zr2 - zi2 + cr;
+                double nzi = 2*zr*zi + ci;
+
+                zr = nzr;
+                zi = nzi;
+
+                zr2 = zr * zr;
+                zi2 = zi * zi;
+                i++;
+                if ((i & CHECK_MASK) == 0 && token.dead()) return INTERIOR;
+
+                if (Math.abs(zr - sr) < eps && Math.abs(zi - si) < eps) return INTERIOR;
+                if (++steps == window) { steps = 0; window <<= 1; sr = zr; si = zi; }
+            }
+            return smooth(i, maxIter, zr, zi);
+        }
+
+        /** {@link #mandelbrot} in single precision. */
+        static float mandelbrotFloat(float cr, float ci, int maxIter, CancelToken token) {
+            if (inCardioidOrBulb(cr, ci)) return INTERIOR;
+
+            float eps = (float) periodicityEpsilon;
+            float zr = 0, zi = 0;
+            float zr2 = 0, zi2 = 0;
+            float sr = 0, si = 0;
+            int window = 1, steps = 0;
+            int i = 0;
+
+            while (i < maxIter && (zr2 + zi2) <= 4.0f) {
+                zi = 2 * zr * zi + ci;
+                zr = zr2 - zi2 + cr;
+                zr2 = zr * zr;
+                zi2 = zi * zi;
+                i++;
+                if ((i & CHECK_MASK) == 0 && token.dead()) return INTERIOR;
+
+                if (Math.abs(zr - sr) < eps && Math.abs(zi - si) < eps) return INTERIOR;
+                if (++steps == window) { steps = 0; window <<= 1; sr = zr; si = zi; }
+            }
+            return smooth(i, maxIter, zr, zi);
+        }
+
+        /** {@link #julia} in single precision. */
+        static float juliaFloat(float zr, float zi, float cr, float ci, int maxIter, CancelToken token) {
+            float eps = (float) periodicityEpsilon;
+            int i = 0;
+            float zr2 = zr * zr, zi2 = zi * zi;
+            float sr = zr, si = zi;
+            int window = 1, steps = 0;
+
+            while (i < maxIter && (zr2 + zi2) <= 4.0f) {
+                float nzr = zr2 - zi2 + cr;
+                float nzi = 2*zr*zi + ci;
+
+                zr = nzr;
+                zi = nzi;
+
+                zr2 = zr * zr;
+                zi2 = zi * zi;
+                i++;
+                if ((i & CHECK_MASK) == 0 && token.dead()) return INTERIOR;
+
+                if (Math.abs(zr - sr) < eps && Math.abs(zi - si) < eps) return INTERIOR;
+                if (++steps == window) { steps = 0; window <<= 1; sr = zr; si = zi; }
+            }
+            return smooth(i, maxIter, zr, zi);
+        }
+
+        /** Leading double of a double-double. */
+        private static double hi(BigDecimal v) { return v.doubleValue(); }
+
+        /** What {@link #hi} leaves out, so hi + lo carries about 106 bits of v. */
+        private static double lo(BigDecimal v) { return v.subtract(new BigDecimal(v.doubleValue())).doubleValue(); }
+
+        /**
+         * Smooth iteration count of the point (dx, dy) away from a double-double
+         * centre {xHi, xLo, yHi, yLo}. Mandelbrot points have no cardioid or
+         * periodicity shortcut here: at this depth both tests would need the
+         * full precision themselves.
+         */
+        static float doubleDouble(FractalType type, double[] centre, double dx, double dy,
+                                  double juliaRe, double juliaIm, int maxIter, CancelToken token)
+        {
+            // centre + offset, by twoSum of the leading parts
+            double pr = centre[0] + dx, vr = pr - centre[0];
+            double er = (centre[0] - (pr - vr)) + (dx - vr) + centre[1];
+            double pi = centre[2] + dy, vi = pi - centre[2];
+            double ei = (centre[2] - (pi - vi)) + (dy - vi) + centre[3];
+            double rH = pr + er, rL = er - (rH - pr);
+            double iH = pi + ei, iL = ei - (iH - pi);
+
+            return (type == FractalType.JULIA)
+                    ? doubleDouble(rH, rL, iH, iL, juliaRe, 0, juliaIm, 0, maxIter, token)
+                    : doubleDouble(0, 0, 0, 0, rH, rL, iH, iL, maxIter, token);
+        }
+
+        /**
+         * Iterates z -> z^2 + c with z and c as (hi, lo) pairs. Products are split
+         * exactly with fma and the sums use Knuth's twoSum, so every step keeps
+         * about 106 bits; only the escape test and the smoothing read the hi parts.
+         */
+        private static float doubleDouble(double zrH, double zrL, double ziH, double ziL,
+                                          double crH, double crL, double ciH, double ciL,
+                                          int maxIter, CancelToken token)
+        {
+            int i = 0;
+            while (i < maxIter && zrH * zrH + ziH * ziH <= 4.0) {
+                double r2 = zrH * zrH, r2L = Math.fma(zrH, zrH, -r2) + 2 * zrH * zrL;
+                double i2 = ziH * ziH, i2L = Math.fma(ziH, ziH, -i2) + 2 * ziH * ziL;
+                double ri = 2 * zrH * ziH, riL = 2 * (Math.fma(zrH, ziH, -zrH * ziH) + zrH * ziL + zrL * ziH);
+
+                // re = r2 - i2 + cr
+                double s = r2 - i2, v = s - r2;
+                double e = (r2 - (s - v)) + (-i2 - v) + r2L - i2L;
+                double aH = s + e, aL = e - (aH - s);
+                s = aH + crH; v = s - aH;
+                e = (aH - (s - v)) + (crH - v) + aL + crL;
+                zrH = s + e; zrL = e - (zrH - s);
+
+                // im = 2 zr zi + ci
+                s = ri + ciH; v = s - ri;
+                e = (ri - (s - v)) + (ciH - v) + riL + ciL;
+                ziH = s + e; ziL = e - (ziH - s);
+
+                i++;
+                if ((i & CHECK_MASK) == 0 && token.dead()) return INTERIOR;
+            }
+            return smooth(i, maxIter, zrH, ziH);
+        }
+
+        /** Smooth iteration count stored for pixels that never escaped. */
+        static final float INTERIOR = Float.POSITIVE_INFINITY;
+
+        private static final double LN2 = Math.log(2);
+
+        /** Continuous escape count: iter - log2(ln |z|^2), or INTERIOR. */
+        static float smooth(int iter, int maxIter, double zr, double zi) {
+            if (iter >= maxIter) return INTERIOR;
+            return (float) (iter - fastLog2(fastLog2(zr*zr + zi*zi) * LN2));
+        }
+
+        /**
+         * log2 from the exponent bits plus a least-squares quartic of the mantissa
+         * on [1, 2); absolute error stays near 2e-4, far below one palette step.
+         */
+        static double fastLog2(double x) {
+            long bits = Double.doubleToRawLongBits(x);
+            int exp = (int) ((bits >>> 52) & 0x7FF) - 1023;
+            double m = Double.longBitsToDouble((bits & 0x000FFFFFFFFFFFFFL) | 0x3FF0000000000000L);
+            return exp + (-2.49684615 + (4.02854818 + (-2.08121439 + (0.62887372 - 0.07915818 * m) * m) * m) * m);
+        }
+
+        /**
+         * Maps smooth iteration counts to RGB through a lookup table. The gradient
+         * is a function of mu / maxIter in [0, 1]; it is sampled {@link #STEPS}
+         * times per iteration once per maxIter, so colouring a pixel is one clamp
+         * and one array read.
+         */
+        static final class Palette {
+            static final int STEPS = 8;
+
+            static final Palette RAINBOW = new Palette("Rainbow",
+                    t -> Color.HSBtoRGB((float) (0.7 + 10.0 * t), 0.8f, 1.0f));
+            static final Palette FIRE = new Palette("Fire",
+                    t -> Color.HSBtoRGB((float) (0.12 * frac(4.0 * t)), 1.0f, (float) Math.min(1.0, 0.25 + 3.0 * frac(4.0 * t))));
+            static final Palette OCEAN = new Palette("Ocean",
+                    t -> Color.HSBtoRGB((float) (0.5 + 0.15 * Math.sin(20.0 * Math.PI * t)), 0.7f, (float) (0.55 + 0.45 * frac(10.0 * t))));
+            static final Palette GRAYSCALE = new Palette("Grayscale",
+                    t -> { int v = (int) (255 * (0.5 + 0.5 * Math.cos(20.0 * Math.PI * t))); return 0xFF000000 | v << 16 | v << 8 | v; });
+
+            static final Palette[] BUILT_IN = { RAINBOW, FIRE, OCEAN, GRAYSCALE };
+
+            private record Table(int maxIter, int[] rgb) {}
+
+            private final String name;
+            private final DoubleToIntFunction gradient;
+            private volatile Table table;
+
+            Palette(String name, DoubleToIntFunction gradient) {
+                this.name = name;
+                this.gradient = gradient;
+            }
+
+            /** The LUT for maxIter, built on first use and kept until maxIter changes. */
+            int[] table(int maxIter) {
+                Table t = table;
+                if (t == null || t.maxIter != maxIter) {
+                    int[] rgb = new int[maxIter * STEPS + 1];
+                    for (int k = 0; k < rgb.length; k++) {
+                        rgb[k] = gradient.applyAsInt(k / (double) (maxIter * STEPS));
+                    }
+                    table = t = new Table(maxIter, rgb);
+                }
+                return t.rgb;
+            }
+
+            static int color(float mu, int[] lut) {
+                if (mu == INTERIOR) return 0x000000;
+                int k = (int) (mu * STEPS + 0.5f);
+                return lut[Math.max(0, Math.min(lut.length - 1, k))];
+            }
+
+            private static double frac(double v) { return v - Math.floor(v); }
+
+            @Override public String toString() { return name; }
+        }
+
+        private static volatile Palette palette = Palette.RAINBOW;
+
+        static void setPalette(Palette p) { palette = p; }
+
+        static Palette palette() { return palette; }
+
+        /** Colours the stored iteration counts again; nothing is re-iterated, so anti-aliasing is lost. */
+        static void recolor(FractalControl handle, Palette p) {
+            int[] lut = p.table(handle.maxIter);
+            float[] mu = handle.iterations;
+            int[] pixels = handle.pixels;
+            for (int i = 0; i < mu.length; i++) {
+                pixels[i] = Palette.color(mu[i], lut);
+            }
+        }
+
+        /**
+         * Shows a saved render as if it had just finished: it runs like a render
+         * on the scheduler but only copies the file's iteration counts or lines
+         * into the handle and publishes them at once. The tiles of a shallow
+         * Mandelbrot/Julia file also go into the tile cache, so views around it
+         * are served from there.
+         */
+        public static FractalControl load(RenderFile file) {
+            RenderFile.Params p = file.params();
+            if (p.type() == FractalType.TREE) {
+                LineBuffer lines = file.lines();
+                return start(DEFAULT_LANE, p.type(), p.w(), p.h(), lines, lines.levels + file.pruned, p.maxIter(),
+                        handle -> publish(handle, 0, lines.capacity(), lines.drawn()));
+            }
+            return start(DEFAULT_LANE, p.type(), p.w(), p.h(), null, 0, p.maxIter(), handle -> {
+                handle.metrics.precision(file.precision());
+                file.iterations().get(0, handle.iterations);
+                recolor(handle, palette);
+                TileCache cache = tileCache;
+                if (cache != null) file.cacheTiles(cache);
+                offer(handle, rect(0, 0, p.w(), p.h()), (long) p.w() * p.h());
+            });
+        }
+
+        /**
+         * Binary snapshot of a finished render: its parameters plus either the
+         * smooth iteration counts of a Mandelbrot/Julia frame or the line arrays
+         * of a tree. All numbers are big-endian:
+         *
+         * <pre>
+         *   int magic "FRAC", short version, short flags, byte type,
+         *   byte precision (-1 for trees; absent in version 1)
+         *   int w, h, maxIter (the depth for trees)
+         *   double angleDeg, scale, juliaRe, juliaIm
+         *   centerX, centerY as length-prefixed decimal strings
+         *   sets:  float mu[w * h]
+         *   trees: int levels, pruned; int x1[n], y1[n], x2[n], y2[n], argb[n]
+         *          (n = 2^levels - 1), then byte splat[n] if pruned > 0
+         * </pre>
+         *
+         * With {@link #COMPRESSED} every int or float array is stored instead as
+         * the zigzag varints of the differences between consecutive values (of
+         * the float bits for mu). Uncompressed arrays are read as views of the
+         * mapped file and compressed ones are decoded into the heap. Only
+         * recolor() works on those views directly; {@link #load} copies them into
+         * the arrays of a render.
+         */
+        static final class RenderFile {
+            static final int MAGIC = 0x46524143;
+            static final int VERSION = 2;
+            static final int COMPRESSED = 1;
+            /** Largest frame read back; its iterations must fit one int-indexed mapping. */
+            private static final long MAX_PIXELS = Integer.MAX_VALUE / 4;
+
+            /** What was rendered; for trees maxIter is the depth and scale the branch scale. */
+            record Params(FractalType type, int w, int h, int maxIter,
+                          double angleDeg,
+                          BigDecimal centerX, BigDecimal centerY, double scale,
+                          double juliaRe, double juliaIm) {}
+
+            private final Params params;
+            private final Precision precision;
+            private final FloatBuffer iterations;
+            private final int levels, pruned;
+            private final IntBuffer[] lines;
+            private final ByteBuffer splat;
+
+            private RenderFile(Params params, Precision precision, FloatBuffer iterations,
+                               int levels, int pruned, IntBuffer[] lines, ByteBuffer splat) {
+                this.params = params;
+                this.precision = precision;
+                this.iterations = iterations;
+                this.levels = levels;
+                this.pruned = pruned;
+                this.lines = lines;
+                this.splat = splat;
+            }
+
+            Params params() { return params; }
+
+            /** The tier the iteration counts were computed in; null for trees. */
+            Precision precision() { return precision; }
+
+            /** Smooth iteration counts of a Mandelbrot/Julia file, row by row. */
+            FloatBuffer iterations() { return iterations.duplicate(); }
+
+            /** The lines of a tree file, copied into a LineBuffer for drawing; the heap then holds the whole tree. */
+            LineBuffer lines() {
+                LineBuffer b = new LineBuffer(levels, pruned, params.w(), params.h(), false);
+                int[][] dst = { b.x1, b.y1, b.x2, b.y2, b.argb };
+                for (int k = 0; k < dst.length; k++) lines[k].get(0, dst[k]);
+                if (b.splat != null) splat.get(0, b.splat);
+                return b;
+            }
+
+            /** Writes the finished render behind {@code handle}. */
+            static void write(Path file, Params p, FractalControl handle, boolean compress) throws IOException {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                    out.writeInt(MAGIC);
+                    out.writeShort(VERSION);
+                    out.writeShort(compress ? COMPRESSED : 0);
+                    out.writeByte(p.type().ordinal());
+                    Precision precision = handle.metrics().precision();
+                    out.writeByte(precision == null ? -1 : precision.ordinal());
+                    out.writeInt(p.w());
+                    out.writeInt(p.h());
+                    out.writeInt(p.maxIter());
+                    out.writeDouble(p.angleDeg());
+                    out.writeDouble(p.scale());
+                    out.writeDouble(p.juliaRe());
+                    out.writeDouble(p.juliaIm());
+                    out.writeUTF(p.centerX().toString());
+                    out.writeUTF(p.centerY().toString());
+
+                    if (p.type() == FractalType.TREE) {
+                        LineBuffer b = handle.lines;
+                        out.writeInt(b.levels);
+                        out.writeInt(b.splat == null ? 0 : Long.numberOfTrailingZeros(b.splatMass + 2) - 1);
+                        for (int[] a : new int[][] { b.x1, b.y1, b.x2, b.y2, b.argb }) {
+                            writeInts(out, a.length, i -> a[i], compress);
+                        }
+                        if (b.splat != null) out.write(b.splat);
+                    } else {
+                        float[] mu = handle.iterations;
+                        writeInts(out, mu.length, i -> Float.floatToRawIntBits(mu[i]), compress);
+                    }
+                }
+            }
+
+            private static void writeInts(DataOutputStream out, int n, IntUnaryOperator value, boolean compress)
+                    throws IOException
+            {
+                int last = 0;
+                for (int i = 0; i < n; i++) {
+                    int v = value.applyAsInt(i);
+                    if (!compress) {
+                        out.writeInt(v);
+                        continue;
+                    }
+                    int d = v - last;
+                    last = v;
+                    // zigzag, then 7 bits per byte with the high bit set on all but the last
+                    for (int z = (d << 1) ^ (d >> 31); ; z >>>= 7) {
+                        if ((z & ~0x7F) == 0) { out.writeByte(z); break; }
+                        out.writeByte((z & 0x7F) | 0x80);
+                    }
+                }
+            }
+
+            /** Maps a file written by {@link #write}. */
+            static RenderFile read(Path file) throws IOException {
+                MappedByteBuffer buf;
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                    buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                }
+                try {
+                    if (buf.getInt() != MAGIC) throw new IOException(file + " is not a render file");
+                    int version = buf.getShort();
+                    if (version < 1 || version > VERSION) throw new IOException("unsupported render file version " + version);
+                    boolean compressed = (buf.getShort() & COMPRESSED) != 0;
+                    FractalType type = FractalType.values()[buf.get()];
+                    int tier = (version >= 2) ? buf.get() : -1;
+                    int w = buf.getInt(), h = buf.getInt(), maxIter = buf.getInt();
+                    if (w <= 0 || h <= 0 || (long) w * h > MAX_PIXELS) {
+                        throw new IOException(file + ": bad frame size " + w + "x" + h);
+                    }
+                    double angleDeg = buf.getDouble(), scale = buf.getDouble();
+                    double jr = buf.getDouble(), ji = buf.getDouble();
+                    BigDecimal cx = new BigDecimal(utf(buf)), cy = new BigDecimal(utf(buf));
+                    Params p = new Params(type, w, h, maxIter, angleDeg, cx, cy, scale, jr, ji);
+
+                    // version 1 predates the tiers; its sets were iterated in double or by perturbation
+                    Precision precision = (type == FractalType.TREE) ? null
+                            : (tier >= 0) ? Precision.values()[tier]
+                            : deep(scale, w) ? Precision.PERTURBATION : Precision.DOUBLE;
+
+                    if (type != FractalType.TREE) {
+                        IntBuffer mu = ints(file, buf, w * h, compressed);
+                        FloatBuffer iterations;
+                        if (compressed) {
+                            float[] f = new float[w * h];
+                            for (int i = 0; i < f.length; i++) f[i] = Float.intBitsToFloat(mu.get(i));
+                            iterations = FloatBuffer.wrap(f);
+                        } else {
+                            iterations = buf.slice(buf.position() - 4 * w * h, 4 * w * h).asFloatBuffer();
+                        }
+                        return new RenderFile(p, precision, iterations, 0, 0, null, null);
+                    }
+
+                    int levels = buf.getInt(), pruned = buf.getInt();
+                    if (levels < 1 || levels > MAX_TREE_DEPTH) throw new IOException("bad tree depth " + levels);
+                    int n = (1 << levels) - 1;
+                    IntBuffer[] lines = new IntBuffer[5];
+                    for (int k = 0; k < lines.length; k++) lines[k] = ints(file, buf, n, compressed);
+                    ByteBuffer splat = (pruned > 0) ? buf.slice(buf.position(), n) : null;
+                    return new RenderFile(p, null, null, levels, pruned, lines, splat);
+                } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                    throw new IOException(file + " is truncated or corrupt", e);
+                }
+            }
+
+            /**
+             * The next array of n ints: a view of the mapping, or decoded from varints.
+             * A count the rest of the file cannot hold is rejected before anything
+             * is allocated; a varint takes at least one byte.
+             */
+            private static IntBuffer ints(Path file, ByteBuffer buf, int n, boolean compressed) throws IOException {
+                if ((compressed ? n : 4L * n) > buf.remaining()) {
+                    throw new IOException(file + ": " + n + " values do not fit in the " + buf.remaining() + " bytes left");
+                }
+                if (!compressed) {
+                    IntBuffer view = buf.slice(buf.position(), 4 * n).asIntBuffer();
+                    buf.position(buf.position() + 4 * n);
+                    return view;
+                }
+                int[] a = new int[n];
+                int last = 0;
+                for (int i = 0; i < n; i++) {
+                    int z = 0;
+                    for (int shift = 0; ; shift += 7) {
+                        byte b = buf.get();
+                        z |= (b & 0x7F) << shift;
+                        if (b >= 0) break;
+                    }
+                    last += (z >>> 1) ^ -(z & 1);
+                    a[i] = last;
+                }
+                return IntBuffer.wrap(a);
+            }
+
+            private static String utf(ByteBuffer buf) {
+                byte[] b = new byte[buf.getShort() & 0xFFFF];
+                buf.get(b);
+                return new String(b, StandardCharsets.UTF_8);
+            }
+
+            /**
+             * Puts every whole lattice tile of a shallow frame into the cache, as if
+             * it had just been rendered; deep zooms have no lattice and add nothing.
+             */
+            void cacheTiles(TileCache cache) {
+                Params p = params;
+                int w = p.w(), h = p.h();
+                if (p.type() == FractalType.TREE || !precision.lattice()) return;
+
+                double step = p.scale() / Math.max(1, w - 1);
+                Plane plane = new Plane(p.type(), w, h, h, p.maxIter(), precision,
+                        latticeOrigin(p.centerX().doubleValue(), step, w),
+                        latticeOrigin(p.centerY().doubleValue(), step, h),
+                        step, p.scale(), p.scale() * h / (double) w, p.juliaRe(), p.juliaIm(),
+                        null, null, null, cache, null, CancelToken.NEVER, null);
+
+                int fx = Math.floorMod(-plane.originX(), TILE), fy = Math.floorMod(-plane.originY(), TILE);
+                for (int y = fy; y + TILE <= h; y += TILE) {
+                    for (int x = fx; x + TILE <= w; x += TILE) {
+                        float[] tile = new float[TILE * TILE];
+                        for (int j = 0; j < TILE; j++) iterations.get((y + j) * w + x, tile, j * TILE, TILE);
+                        cache.put(plane.tileKey(x, y), tile);
+                    }
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,27 +1,33 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 public class FractalTree extends Canvas {
     private static boolean slowMode;
     private static ExecutorService exec;
     
-    private static final int QUEUE_CAPACITY = 1000;
-    private static final BlockingQueue<LineTask> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // one slot per branch, indexed in pre-order; sized in main from maxHeight
+    private static int[] x1s, y1s, x2s, y2s, argbs;
     
-    private static class LineTask{
-        final int x1, y1, x2, y2;
-        final Color color;
-        
-        LineTask (int x1,int y1,int x2,int y2, Color color){
-            this.x1 = x1;
-            this.y1 = y1;
-            this.x2 = x2;
-            this.y2 = y2;
-            this.color = color;
+    // order in which branches finished: workers append indices, the drawing loop reads them
+    private static AtomicIntegerArray drawOrder;
+    private static final AtomicInteger drawTail = new AtomicInteger();
+    private static final Semaphore linesReady = new Semaphore(0);
+    
+    private static void allocateLines(int maxHeight){
+        int n = (1 << maxHeight) - 1;
+        x1s = new int[n];
+        y1s = new int[n];
+        x2s = new int[n];
+        y2s = new int[n];
+        argbs = new int[n];
+        drawOrder = new AtomicIntegerArray(n);
+        for (int i = 0; i < n; i++){
+            drawOrder.set(i, -1);
         }
     }
     
@@ -47,8 +53,17 @@ public class FractalTree extends Canvas {
     }
     
     private static final TaskCounter taskCounter = new TaskCounter();
+    
+    // angles are whole degrees, so every heading the tree can reach has its entry here
+    private static final double[] COS = new double[360], SIN = new double[360];
+    static {
+        for (int a = 0; a < 360; a++){
+            COS[a] = Math.cos(Math.toRadians(a));
+            SIN[a] = Math.sin(Math.toRadians(a));
+        }
+    }
 
-    public void makeFractalTree(Graphics g, int x, int y, int angle, int height) {
+    public void makeFractalTree(Graphics g, int index, int x, int y, int angle, int height) {
 
         if (slowMode) {
             try {Thread.sleep(100);}
@@ -58,19 +73,20 @@ public class FractalTree extends Canvas {
         if (height == 0) return;
         
         double length = height * 10.0;
-        double rad = Math.toRadians(angle);
+        int deg = Math.floorMod(angle, 360);
         
         
-        int x2 = x + (int)(Math.cos(rad) * length);
-        int y2 = y + (int)(Math.sin(rad) * length);
+        int x2 = x + (int)(COS[deg] * length);
+        int y2 = y + (int)(SIN[deg] * length);
         
-        Color c = (height <= 2) ? Color.GREEN : Color.BLACK;
+        x1s[index] = x;
+        y1s[index] = y;
+        x2s[index] = x2;
+        y2s[index] = y2;
+        argbs[index] = (height <= 2) ? Color.GREEN.getRGB() : Color.BLACK.getRGB();
         
-        try {
-            queue.put(new LineTask(x,y,x2,y2,c));
-        }catch (InterruptedException e){
-            e.printStackTrace();
-        }
+        drawOrder.set(drawTail.getAndIncrement(), index);
+        linesReady.release();
         
         int delta = 20;
         
@@ -78,13 +94,13 @@ public class FractalTree extends Canvas {
         
         exec.submit(() -> {
             try {
-                makeFractalTree(g,x2,y2,angle - delta,height - 1);
+                makeFractalTree(g,index + 1,x2,y2,angle - delta,height - 1);
             }finally{
                 taskCounter.taskFinished();
             }
         });
         
-        makeFractalTree(g,x2,y2,angle + delta,height - 1);
+        makeFractalTree(g,index + (1 << (height - 1)),x2,y2,angle + delta,height - 1);
     }
     
     public void startDrawingLoop(){
@@ -93,15 +109,26 @@ public class FractalTree extends Canvas {
             return;
         }
         
-        while(true){
+        Color color = null;
+        for (int next = 0; next < drawOrder.length(); next++){
             try {
-                LineTask task = queue.take();
-                g.setColor(task.color);
-                g.drawLine(task.x1,task.y1,task.x2,task.y2);
+                linesReady.acquire();
             }catch (InterruptedException e){
                 e.printStackTrace();
                 break;
             }
+            
+            // the permit can belong to a later slot whose writer overtook this one
+            int i;
+            while ((i = drawOrder.get(next)) < 0){
+                Thread.onSpinWait();
+            }
+            
+            if (color == null || color.getRGB() != argbs[i]){
+                color = new Color(argbs[i]);
+            }
+            g.setColor(color);
+            g.drawLine(x1s[i],y1s[i],x2s[i],y2s[i]);
         }
         
     }
@@ -127,17 +154,19 @@ public class FractalTree extends Canvas {
         int par = Math.min(128, Runtime.getRuntime().availableProcessors());
         exec = Executors.newFixedThreadPool(par);
         
-        SwingUtilities.invokeLater(() -> tree.startDrawingLoop());
-        
         int startX = frame.getWidth() / 2;
         int startY = frame.getHeight() - 100;
         int startAngle = -90;
         int maxHeight = 10;
         
+        allocateLines(maxHeight);
+        
+        SwingUtilities.invokeLater(() -> tree.startDrawingLoop());
+        
         taskCounter.taskSubmitted();
         exec.submit(() -> {
             try {
-                tree.makeFractalTree(null, startX, startY, startAngle, maxHeight);
+                tree.makeFractalTree(null, 0, startX, startY, startAngle, maxHeight);
             }finally{
                 taskCounter.taskFinished();
             }
@@ -0,0 +1,158 @@
+package assigment;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/* ============================================================
+ *  VectorKernel: lane-parallel escape loop (jdk.incubator.vector)
+ *
+ *  Compile and run with --add-modules jdk.incubator.vector.
+ *  FractalGenerator loads this class reflectively and keeps the
+ *  scalar kernel when the module is not there.
+ * ============================================================ */
+final class VectorKernel implements FractalAppExt.FractalGenerator.EscapeKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    @Override
+    public void iterate(double[] zr, double[] zi, double[] cr, double[] ci,
+                        double[] iter, int n, int maxIter)
+    {
+        int lanes = SPECIES.length();
+        int i = 0;
+        for (; i + lanes <= n; i += lanes) {
+            lanes(zr, zi, cr, ci, iter, i, maxIter);
+        }
+        for (; i < n; i++) {
+            scalar(zr, zi, cr, ci, iter, i, maxIter);
+        }
+    }
+
+    @Override
+    public void iterate(float[] zr, float[] zi, float[] cr, float[] ci,
+                        float[] iter, int n, int maxIter)
+    {
+        int lanes = FLOATS.length();
+        int i = 0;
+        for (; i + lanes <= n; i += lanes) {
+            lanes(zr, zi, cr, ci, iter, i, maxIter);
+        }
+        for (; i < n; i++) {
+            scalar(zr, zi, cr, ci, iter, i, maxIter);
+        }
+    }
+
+    /** Same operations, in the same order, as the scalar kernels, so results are bit-identical. */
+    private static void lanes(double[] zr, double[] zi, double[] cr, double[] ci,
+                              double[] iter, int off, int maxIter)
+    {
+        DoubleVector vzr = DoubleVector.fromArray(SPECIES, zr, off);
+        DoubleVector vzi = DoubleVector.fromArray(SPECIES, zi, off);
+        DoubleVector vcr = DoubleVector.fromArray(SPECIES, cr, off);
+        DoubleVector vci = DoubleVector.fromArray(SPECIES, ci, off);
+        DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+
+        DoubleVector zr2 = vzr.mul(vzr);
+        DoubleVector zi2 = vzi.mul(vzi);
+        DoubleVector count = DoubleVector.zero(SPECIES);
+
+        VectorMask<Double> active = zr2.add(zi2).compare(VectorOperators.LE, 4.0);
+
+        for (int k = 0; k < maxIter && active.anyTrue(); k++) {
+            DoubleVector nzi = vzr.mul(2.0).mul(vzi).add(vci);
+            DoubleVector nzr = zr2.sub(zi2).add(vcr);
+
+            // escaped lanes keep the z they escaped with
+            vzr = vzr.blend(nzr, active);
+            vzi = vzi.blend(nzi, active);
+            zr2 = vzr.mul(vzr);
+            zi2 = vzi.mul(vzi);
+            count = count.add(one, active);
+
+            active = active.and(zr2.add(zi2).compare(VectorOperators.LE, 4.0));
+        }
+
+        vzr.intoArray(zr, off);
+        vzi.intoArray(zi, off);
+        count.intoArray(iter, off);
+    }
+
+    private static void scalar(double[] zr, double[] zi, double[] cr, double[] ci,
+                               double[] iter, int k, int maxIter)
+    {
+        double r = zr[k], m = zi[k];
+        double r2 = r * r, m2 = m * m;
+        int i = 0;
+
+        while (i < maxIter && (r2 + m2) <= 4.0) {
+            double nm = 2 * r * m + ci[k];
+            r = r2 - m2 + cr[k];
+            m = nm;
+            r2 = r * r;
+            m2 = m * m;
+            i++;
+        }
+
+        zr[k] = r;
+        zi[k] = m;
+        iter[k] = i;
+    }
+
+    private static void lanes(float[] zr, float[] zi, float[] cr, float[] ci,
+                              float[] iter, int off, int maxIter)
+    {
+        FloatVector vzr = FloatVector.fromArray(FLOATS, zr, off);
+        FloatVector vzi = FloatVector.fromArray(FLOATS, zi, off);
+        FloatVector vcr = FloatVector.fromArray(FLOATS, cr, off);
+        FloatVector vci = FloatVector.fromArray(FLOATS, ci, off);
+        FloatVector one = FloatVector.broadcast(FLOATS, 1.0f);
+
+        FloatVector zr2 = vzr.mul(vzr);
+        FloatVector zi2 = vzi.mul(vzi);
+        FloatVector count = FloatVector.zero(FLOATS);
+
+        VectorMask<Float> active = zr2.add(zi2).compare(VectorOperators.LE, 4.0f);
+
+        for (int k = 0; k < maxIter && active.anyTrue(); k++) {
+            FloatVector nzi = vzr.mul(2.0f).mul(vzi).add(vci);
+            FloatVector nzr = zr2.sub(zi2).add(vcr);
+
+            vzr = vzr.blend(nzr, active);
+            vzi = vzi.blend(nzi, active);
+            zr2 = vzr.mul(vzr);
+            zi2 = vzi.mul(vzi);
+            count = count.add(one, active);
+
+            active = active.and(zr2.add(zi2).compare(VectorOperators.LE, 4.0f));
+        }
+
+        vzr.intoArray(zr, off);
+        vzi.intoArray(zi, off);
+        count.intoArray(iter, off);
+    }
+
+    private static void scalar(float[] zr, float[] zi, float[] cr, float[] ci,
+                               float[] iter, int k, int maxIter)
+    {
+        float r = zr[k], m = zi[k];
+        float r2 = r * r, m2 = m * m;
+        int i = 0;
+
+        while (i < maxIter && (r2 + m2) <= 4.0f) {
+            float nm = 2 * r * m + ci[k];
+            r = r2 - m2 + cr[k];
+            m = nm;
+            r2 = r * r;
+            m2 = m * m;
+            i++;
+        }
+
+        zr[k] = r;
+        zi[k] = m;
+        iter[k] = i;
+    }
+}
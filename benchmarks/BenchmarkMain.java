@@ -0,0 +1,29 @@
+package assigment;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+
+/**
+ * Entry point of target/benchmarks.jar: the usual JMH command line, with the
+ * GC profiler always on so every result also reports bytes allocated per op.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        // help and listings print and exit, nothing to profile
+        if (Arrays.stream(args).anyMatch(a -> a.startsWith("-h") || a.startsWith("-l"))) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        CommandLineOptions cli = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder()
+                .parent(cli)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,46 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator.RecordRing;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer/consumer handoff through the record ring: three workers publish
+ * while one thread drains, as the UI timer does in update(). Producers use
+ * tryOffer so that no thread is left parked on a full ring when an iteration
+ * ends; a failed offer is the point where offer() would apply backpressure.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class HandoffBenchmark {
+
+    @Param({"1024", "4096", "65536"})
+    int capacity;
+
+    private RecordRing ring;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        ring = new RecordRing(capacity, RecordRing.Backpressure.BLOCK);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(3)
+    public boolean publish() {
+        return ring.tryOffer(FractalAppExt.FractalGenerator.rect(0, 0, 64, 64));
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public int drain(Blackhole bh) {
+        return ring.drain(bh::consume);
+    }
+}
@@ -0,0 +1,114 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalType;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pixel throughput of the escape-time kernels and the palette lookup on a
+ * 64x64 grid spanning the whole Mandelbrot set, so a fixed mix of interior,
+ * boundary and fast-escaping points is measured at every iteration limit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+
+    private static final int SIDE = 64;
+    private static final int POINTS = SIDE * SIDE;
+
+    @Param({"64", "256", "1024", "4096"})
+    int maxIter;
+
+    private final double[] re = new double[POINTS];
+    private final double[] im = new double[POINTS];
+    private final float[] mu = new float[POINTS];
+
+    private final double[] zr = new double[POINTS];
+    private final double[] zi = new double[POINTS];
+    private final double[] iter = new double[POINTS];
+
+    private final float[] fre = new float[POINTS];
+    private final float[] fim = new float[POINTS];
+    private final float[] fzr = new float[POINTS];
+    private final float[] fzi = new float[POINTS];
+    private final float[] fiter = new float[POINTS];
+
+    private FractalGenerator.EscapeKernel vector;
+    private int[] lut;
+
+    @Setup
+    public void setup() {
+        for (int y = 0; y < SIDE; y++) {
+            for (int x = 0; x < SIDE; x++) {
+                re[y * SIDE + x] = -2.0 + 2.5 * x / (SIDE - 1);
+                im[y * SIDE + x] = -1.25 + 2.5 * y / (SIDE - 1);
+            }
+        }
+        for (int i = 0; i < POINTS; i++) {
+            mu[i] = FractalGenerator.mandelbrot(re[i], im[i], maxIter);
+            fre[i] = (float) re[i];
+            fim[i] = (float) im[i];
+        }
+
+        vector = new VectorKernel();
+        lut = FractalGenerator.Palette.RAINBOW.table(maxIter);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void mandelbrot(Blackhole bh) {
+        for (int i = 0; i < POINTS; i++) bh.consume(FractalGenerator.mandelbrot(re[i], im[i], maxIter));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void julia(Blackhole bh) {
+        for (int i = 0; i < POINTS; i++) bh.consume(FractalGenerator.julia(re[i], im[i], -0.8, 0.156, maxIter));
+    }
+
+    /** Raw SIMD iteration: no cardioid or periodicity shortcuts, unlike mandelbrot. */
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public double[] vectorMandelbrot() {
+        Arrays.fill(zr, 0.0);
+        Arrays.fill(zi, 0.0);
+        vector.iterate(zr, zi, re, im, iter, POINTS, maxIter);
+        return iter;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public float[] vectorMandelbrotFloat() {
+        Arrays.fill(fzr, 0.0f);
+        Arrays.fill(fzi, 0.0f);
+        vector.iterate(fzr, fzi, fre, fim, fiter, POINTS, maxIter);
+        return fiter;
+    }
+
+    /** Double-double iteration, centred on each point; no shortcuts either. */
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void doubleDouble(Blackhole bh) {
+        double[] centre = new double[4];
+        for (int i = 0; i < POINTS; i++) {
+            centre[0] = re[i];
+            centre[2] = im[i];
+            bh.consume(FractalGenerator.doubleDouble(FractalType.MANDELBROT, centre, 0, 0, 0, 0, maxIter,
+                    FractalGenerator.CancelToken.NEVER));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void palette(Blackhole bh) {
+        for (int i = 0; i < POINTS; i++) bh.consume(FractalGenerator.Palette.color(mu[i], lut));
+    }
+}
@@ -0,0 +1,57 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalType;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time of one full Mandelbrot/Julia frame per resolution and worker count,
+ * from generate() until the pool has terminated and the ring is drained. The
+ * tile cache and preview passes are off so every frame does the full work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class RenderBenchmark {
+
+    @Param({"MANDELBROT", "JULIA"})
+    String fractal;
+
+    @Param({"640x480", "1920x1080", "3840x2160"})
+    String resolution;
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    @Param({"500"})
+    int maxIter;
+
+    private FractalType type;
+    private int w, h;
+
+    @Setup
+    public void setup() {
+        type = FractalType.valueOf(fractal);
+        String[] wh = resolution.split("x");
+        w = Integer.parseInt(wh[0]);
+        h = Integer.parseInt(wh[1]);
+
+        FractalGenerator.setTileCache(null);
+        FractalGenerator.setProgressive(false);
+        FractalGenerator.setParallelism(threads);
+    }
+
+    @Benchmark
+    public int[] frame() throws InterruptedException {
+        BigDecimal cx = (type == FractalType.MANDELBROT) ? new BigDecimal("-0.5") : BigDecimal.ZERO;
+        FractalGenerator.FractalControl handle = FractalGenerator.generate(
+                type, w, h, 0, 0, maxIter, cx, BigDecimal.ZERO, 3.0, -0.8, 0.156);
+        return TreeBenchmark.await(handle).pixels();
+    }
+}
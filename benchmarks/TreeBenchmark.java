@@ -0,0 +1,62 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalType;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tree generation (geometry, line transform and the range records) at depths
+ * 10 to 30 with slowMode off, with and without LOD, and with the geometry
+ * either reused or computed afresh for every tree. Depth 24 fills five
+ * 16M-entry int arrays, hence the larger heap; without LOD deeper trees are
+ * clamped to 24.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx2g"})
+public class TreeBenchmark {
+
+    @Param({"10", "12", "14", "16", "18", "20", "22", "24", "30"})
+    int depth;
+
+    @Param({"false", "true"})
+    boolean lod;
+
+    @Param({"true", "false"})
+    boolean reuse;
+
+    @Setup
+    public void setup() {
+        FractalGenerator.setSlowMode(false);
+        FractalGenerator.setTreeLod(lod);
+    }
+
+    @Setup(Level.Invocation)
+    public void dropGeometry() {
+        if (!reuse) FractalGenerator.forgetTreeGeometry();
+    }
+
+    @Benchmark
+    public FractalGenerator.LineBuffer tree() throws InterruptedException {
+        FractalGenerator.FractalControl handle = FractalGenerator.generate(
+                FractalType.TREE, 1920, 1080, depth, 25.0, 0, BigDecimal.ZERO, BigDecimal.ZERO, 0.8, 0, 0);
+        return await(handle).lines();
+    }
+
+    /** Drains the ring the way the UI timer does until the render's pool has terminated. */
+    static FractalGenerator.FractalControl await(FractalGenerator.FractalControl handle)
+            throws InterruptedException
+    {
+        while (!handle.pool().awaitTermination(100, TimeUnit.MICROSECONDS)) {
+            FractalGenerator.update(handle, r -> {});
+        }
+        FractalGenerator.update(handle, r -> {});
+        return handle;
+    }
+}
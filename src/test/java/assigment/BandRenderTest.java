@@ -0,0 +1,72 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalGenerator.FractalControl;
+import assigment.FractalAppExt.FractalType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A frame rendered band by band, as --batch and the distributed workers do,
+ * must equal the same frame rendered whole.
+ */
+class BandRenderTest {
+
+    private static final FractalType TYPE = FractalType.MANDELBROT;
+    private static final int MAX_ITER = 500;
+
+    private final int antialias = FractalGenerator.antialias();
+
+    @AfterEach
+    void restore() {
+        FractalGenerator.setAntialias(antialias);
+    }
+
+    private static FractalControl finished(FractalControl handle) {
+        assertTrue(FractalAppExt.BatchRender.await(handle));
+        assertFalse(handle.dead());
+        return handle;
+    }
+
+    private static void assertBandsMatch(int w, int h, int bandRows, String cx, String cy, double scale) {
+        BigDecimal x = new BigDecimal(cx), y = new BigDecimal(cy);
+        int[] full = finished(FractalGenerator.generate(TYPE, w, h, 0, 0, MAX_ITER, x, y, scale, 0, 0)).pixels();
+
+        for (int top = 0; top < h; top += bandRows) {
+            int rows = Math.min(bandRows, h - top);
+            int[] band = finished(FractalGenerator.generateBand(TYPE, w, h, top, rows, MAX_ITER, x, y, scale, 0, 0))
+                    .pixels();
+            for (int i = 0; i < w * rows; i++) {
+                if (band[i] != full[top * w + i]) {
+                    fail(String.format("%s at %g, %d-row bands: pixel (%d, %d) differs",
+                            FractalGenerator.precision(TYPE, scale, w, h), scale, bandRows, i % w, top + i / w));
+                }
+            }
+        }
+    }
+
+    @Test
+    void bandsMatchTheFullFrame() {
+        assertBandsMatch(400, 256, 64, "-0.5", "0", 3.0);
+        assertBandsMatch(400, 256, 50, "-0.5", "0", 3.0);
+        assertBandsMatch(200, 128, 40, "-0.743643887037151", "0.131825904205330", 1e-15);
+    }
+
+    /** The supersampling pass reads a halo row past each band edge, which must not show. */
+    @Test
+    void antialiasedBandsMatchTheFullFrame() {
+        FractalGenerator.setAntialias(FractalGenerator.AA_SAMPLES);
+        assertBandsMatch(400, 256, 64, "-0.5", "0", 3.0);
+        assertBandsMatch(400, 256, 50, "-0.5", "0", 3.0);
+    }
+
+    @Test
+    void antialiasedDeepBandsMatchTheFullFrame() {
+        FractalGenerator.setAntialias(FractalGenerator.AA_SAMPLES);
+        assertBandsMatch(200, 128, 40, "-0.743643887037151", "0.131825904205330", 1e-15);
+    }
+}
@@ -0,0 +1,141 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalGenerator.FractalControl;
+import assigment.FractalAppExt.FractalGenerator.Precision;
+import assigment.FractalAppExt.FractalGenerator.ReferenceOrbit;
+import assigment.FractalAppExt.FractalGenerator.RenderScheduler;
+import assigment.FractalAppExt.FractalGenerator.TileCache;
+import assigment.FractalAppExt.FractalType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Deep zooms, where frames are sampled as offsets from the view centre. */
+class DeepZoomTest {
+
+    private static final int W = 160, H = 120;
+
+    private final TileCache cache = FractalGenerator.tileCache();
+
+    @BeforeEach
+    void noCache() { FractalGenerator.setTileCache(null); }
+
+    @AfterEach
+    void restore() {
+        FractalGenerator.setTileCache(cache);
+        FractalGenerator.setMinPrecision(Precision.FLOAT);
+    }
+
+    private static FractalControl render(Precision tier, BigDecimal cx, BigDecimal cy, double scale, int maxIter) {
+        FractalGenerator.setMinPrecision(tier);
+        FractalControl handle = FractalGenerator.generate(FractalType.MANDELBROT, W, H, 0, 0, maxIter,
+                cx, cy, scale, 0, 0);
+        assertTrue(FractalAppExt.BatchRender.await(handle));
+        assertFalse(handle.dead());
+        assertEquals(tier, handle.metrics().precision());
+        return handle;
+    }
+
+    /**
+     * The reference orbit of this view escapes after about 130 steps while
+     * thousands of its pixels run longer, so those pixels have to be rebased
+     * onto the start of the orbit to finish.
+     */
+    @Test
+    void rebasedPerturbationMatchesDoubleDouble() {
+        BigDecimal cx = new BigDecimal("-0.10109636384562"), cy = new BigDecimal("0.95628651080914");
+        double scale = 1e-15;
+        int maxIter = 3000;
+
+        FractalControl exact = render(Precision.DOUBLE_DOUBLE, cx, cy, scale, maxIter);
+        FractalControl perturbed = render(Precision.PERTURBATION, cx, cy, scale, maxIter);
+
+        ReferenceOrbit ref = ReferenceOrbit.compute(perturbed, FractalType.MANDELBROT, cx, cy, scale, maxIter, 0, 0);
+        assertTrue(ref.length <= maxIter, "the reference escapes");
+        int outlasting = 0;
+        for (float mu : exact.iterations()) if (mu > ref.length) outlasting++;
+        assertTrue(outlasting > 1000, "pixels that run past the reference: " + outlasting);
+
+        float[] a = exact.iterations(), b = perturbed.iterations();
+        for (int i = 0; i < a.length; i++) {
+            assertEquals(a[i], b[i], "pixel (" + i % W + ", " + i / W + ")");
+        }
+    }
+
+    private static Precision tier(FractalType type, double spacing, int w, int h) {
+        return FractalGenerator.precision(type, spacing * w, w, h);
+    }
+
+    @Test
+    void tiersChangeAtTheirBoundaries() {
+        FractalGenerator.setMinPrecision(Precision.FLOAT);
+        double above = 1 + 1e-9, below = 1 - 1e-9;
+        assertEquals(Precision.FLOAT, tier(FractalType.MANDELBROT, 1e-3 * above, W, H));
+        assertEquals(Precision.DOUBLE, tier(FractalType.MANDELBROT, 1e-3 * below, W, H));
+        assertEquals(Precision.DOUBLE, tier(FractalType.JULIA, 1e-3 * above, W, H));
+        assertEquals(Precision.DOUBLE, tier(FractalType.MANDELBROT, FractalGenerator.DEEP_ZOOM_SPACING * above, W, H));
+        assertEquals(Precision.DOUBLE_DOUBLE,
+                tier(FractalType.MANDELBROT, FractalGenerator.DEEP_ZOOM_SPACING * below, W, H));
+        assertEquals(Precision.DOUBLE_DOUBLE,
+                tier(FractalType.MANDELBROT, FractalGenerator.DOUBLE_DOUBLE_SPACING * above, W, H));
+        assertEquals(Precision.PERTURBATION,
+                tier(FractalType.MANDELBROT, FractalGenerator.DOUBLE_DOUBLE_SPACING * below, W, H));
+
+        // past REFERENCE_PIXELS the reference orbit pays for itself
+        double deep = 1e-17;
+        int w = 256, h = (int) (FractalGenerator.REFERENCE_PIXELS / w);
+        assertEquals(Precision.DOUBLE_DOUBLE, tier(FractalType.MANDELBROT, deep, w, h));
+        assertEquals(Precision.PERTURBATION, tier(FractalType.MANDELBROT, deep, w, h + 1));
+
+        // unless double-double is the floor
+        FractalGenerator.setMinPrecision(Precision.DOUBLE_DOUBLE);
+        assertEquals(Precision.DOUBLE_DOUBLE, tier(FractalType.MANDELBROT, deep, w, h + 1));
+        assertEquals(Precision.DOUBLE_DOUBLE, tier(FractalType.MANDELBROT, 1.0, w, h + 1));
+    }
+
+    /** Distributed workers may run any scheduler, and must still agree on the tier. */
+    @Test
+    void tiersDoNotDependOnTheScheduler() {
+        int w = 256, h = (int) (FractalGenerator.REFERENCE_PIXELS / w);
+        try {
+            for (RenderScheduler.Mode mode : RenderScheduler.Mode.values()) {
+                for (int threads : new int[] { 1, 64 }) {
+                    FractalGenerator.setScheduler(mode, threads);
+                    String where = mode + " with " + threads + " threads";
+                    assertEquals(Precision.DOUBLE_DOUBLE, tier(FractalType.MANDELBROT, 1e-17, w, h), where);
+                    assertEquals(Precision.PERTURBATION, tier(FractalType.MANDELBROT, 1e-17, w, h + 1), where);
+                }
+            }
+        } finally {
+            FractalGenerator.setScheduler(RenderScheduler.Mode.WORK_STEALING,
+                    Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * A view centred inside the set, so the reference orbit never escapes and
+     * perturbation runs without rebasing; every pixel escapes within maxIter.
+     */
+    @Test
+    void perturbationMatchesDoubleDouble() {
+        BigDecimal cx = new BigDecimal("-1.7497219803469"), cy = BigDecimal.ZERO;
+        double scale = 1e-16;
+        int maxIter = 1500;
+
+        float[] a = render(Precision.DOUBLE_DOUBLE, cx, cy, scale, maxIter).iterations();
+        FractalControl perturbed = render(Precision.PERTURBATION, cx, cy, scale, maxIter);
+        float[] b = perturbed.iterations();
+
+        ReferenceOrbit ref = ReferenceOrbit.compute(perturbed, FractalType.MANDELBROT, cx, cy, scale, maxIter, 0, 0);
+        assertTrue(ref.length > maxIter, "the reference stays bounded");
+        for (int i = 0; i < a.length; i++) {
+            assertTrue(a[i] < maxIter, "pixel " + i + " escapes");
+            assertEquals(a[i], b[i], "pixel (" + i % W + ", " + i / W + ")");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator.RecordRing;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordRingTest {
+
+    @Test
+    void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(8, new RecordRing(5, RecordRing.Backpressure.BLOCK).capacity());
+        assertEquals(4096, new RecordRing(4096, RecordRing.Backpressure.BLOCK).capacity());
+    }
+
+    @Test
+    void drainHandsRecordsOverInOfferOrder() throws InterruptedException {
+        RecordRing ring = new RecordRing(16, RecordRing.Backpressure.BLOCK);
+        List<Long> seen = new ArrayList<>();
+        for (int round = 0; round < 5; round++) {
+            for (long r = 0; r < 10; r++) ring.offer(round * 10 + r);
+            assertEquals(10, ring.drain(seen::add));
+        }
+        for (int i = 0; i < seen.size(); i++) assertEquals(i, (long) seen.get(i));
+        assertEquals(0, ring.size());
+        assertEquals(0, ring.drain(r -> fail("ring should be empty")));
+    }
+
+    @Test
+    void recordsOfferedAfterASpillFollowIt() throws InterruptedException {
+        RecordRing ring = new RecordRing(4, RecordRing.Backpressure.OVERFLOW);
+        List<Long> seen = new ArrayList<>();
+        for (long r = 0; r < 6; r++) ring.offer(r);
+        // once 0 is taken the ring has room again, but 6 must still queue behind the spilled 4 and 5
+        ring.drain(r -> {
+            seen.add(r);
+            if (r == 0) {
+                try { ring.offer(6); } catch (InterruptedException e) { throw new AssertionError(e); }
+            }
+        });
+        ring.drain(seen::add);
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L, 6L), seen);
+    }
+
+    @Test
+    void tryOfferFailsOnlyWhenFull() {
+        RecordRing ring = new RecordRing(4, RecordRing.Backpressure.BLOCK);
+        for (long r = 0; r < 4; r++) assertTrue(ring.tryOffer(r));
+        assertFalse(ring.tryOffer(4));
+        ring.drain(r -> {});
+        assertTrue(ring.tryOffer(4));
+    }
+
+    @Test
+    void overflowSpillsAfterTheRingWithoutLosingRecords() throws InterruptedException {
+        RecordRing ring = new RecordRing(4, RecordRing.Backpressure.OVERFLOW);
+        for (long r = 0; r < 10; r++) ring.offer(r);
+        assertEquals(6, ring.overflowed());
+
+        List<Long> seen = new ArrayList<>();
+        assertEquals(10, ring.drain(seen::add));
+        for (int i = 0; i < 10; i++) assertEquals(i, (long) seen.get(i));
+    }
+
+    /** Each producer's records arrive in its own order while the consumer drains concurrently. */
+    @Test
+    void concurrentProducersKeepTheirOwnOrder() throws InterruptedException {
+        int producers = 4, perProducer = 50_000;
+        for (RecordRing.Backpressure mode : RecordRing.Backpressure.values()) {
+            RecordRing ring = new RecordRing(64, mode);
+            CountDownLatch done = new CountDownLatch(producers);
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                long id = p;
+                Thread t = new Thread(() -> {
+                    try {
+                        for (long k = 0; k < perProducer; k++) ring.offer(id << 32 | k);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+                threads.add(t);
+                t.start();
+            }
+
+            long[] next = new long[producers];
+            long[] count = new long[1];
+            while (done.getCount() > 0 || ring.size() > 0 || count[0] < (long) producers * perProducer) {
+                ring.drain(r -> {
+                    int p = (int) (r >>> 32);
+                    long k = (int) r;
+                    assertEquals(next[p], k, mode + ": producer " + p + " out of order");
+                    next[p] = k + 1;
+                    count[0]++;
+                });
+                Thread.onSpinWait();
+            }
+            for (Thread t : threads) t.join();
+
+            assertEquals((long) producers * perProducer, count[0], mode.toString());
+            for (int p = 0; p < producers; p++) assertEquals(perProducer, next[p], mode + ": producer " + p);
+        }
+    }
+}
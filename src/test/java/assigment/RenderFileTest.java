@@ -0,0 +1,157 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalGenerator.FractalControl;
+import assigment.FractalAppExt.FractalGenerator.LineBuffer;
+import assigment.FractalAppExt.FractalGenerator.RenderFile;
+import assigment.FractalAppExt.FractalType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RenderFileTest {
+
+    @TempDir Path dir;
+
+    @BeforeEach
+    void fastTrees() { FractalGenerator.setSlowMode(false); }
+
+    @AfterEach
+    void restore() { FractalGenerator.setSlowMode(true); }
+
+    private static FractalControl finished(FractalControl handle) {
+        assertTrue(FractalAppExt.BatchRender.await(handle));
+        assertFalse(handle.dead());
+        return handle;
+    }
+
+    private static RenderFile.Params params(FractalType type, int w, int h, int maxIter, double scale) {
+        return new RenderFile.Params(type, w, h, maxIter, 20.0,
+                BigDecimal.valueOf(-0.5), BigDecimal.ZERO, scale, -0.8, 0.156);
+    }
+
+    @Test
+    void setRoundTripsRawAndCompressed() throws IOException {
+        RenderFile.Params p = params(FractalType.MANDELBROT, 97, 61, 300, 3.0);
+        FractalControl handle = finished(FractalGenerator.generate(p.type(), p.w(), p.h(), 0, 0, p.maxIter(),
+                p.centerX(), p.centerY(), p.scale(), p.juliaRe(), p.juliaIm()));
+
+        for (boolean compress : new boolean[] { false, true }) {
+            Path file = dir.resolve("set-" + compress + ".frac");
+            RenderFile.write(file, p, handle, compress);
+            RenderFile read = RenderFile.read(file);
+
+            assertEquals(p, read.params());
+            assertEquals(handle.metrics().precision(), read.precision());
+            FloatBuffer mu = read.iterations();
+            assertEquals(handle.iterations().length, mu.remaining());
+            for (int i = 0; i < handle.iterations().length; i++) {
+                assertEquals(Float.floatToRawIntBits(handle.iterations()[i]), Float.floatToRawIntBits(mu.get(i)),
+                        "compress=" + compress + ", pixel " + i);
+            }
+
+            // opening the file shows the same frame without iterating
+            FractalControl loaded = finished(FractalGenerator.load(read));
+            assertArrayEquals(handle.pixels(), loaded.pixels(), "compress=" + compress);
+        }
+    }
+
+    @Test
+    void treeRoundTripsRawAndCompressed() throws IOException {
+        RenderFile.Params p = params(FractalType.TREE, 200, 160, 12, 0.8);
+        FractalControl handle = finished(FractalGenerator.generate(p.type(), p.w(), p.h(), p.maxIter(),
+                p.angleDeg(), p.maxIter(), p.centerX(), p.centerY(), p.scale(), p.juliaRe(), p.juliaIm()));
+        LineBuffer lines = handle.lines();
+
+        for (boolean compress : new boolean[] { false, true }) {
+            Path file = dir.resolve("tree-" + compress + ".frac");
+            RenderFile.write(file, p, handle, compress);
+            RenderFile read = RenderFile.read(file);
+
+            assertEquals(p, read.params());
+            assertNull(read.precision());
+            LineBuffer copy = read.lines();
+            assertEquals(lines.levels, copy.levels);
+            assertArrayEquals(lines.x1, copy.x1);
+            assertArrayEquals(lines.y1, copy.y1);
+            assertArrayEquals(lines.x2, copy.x2);
+            assertArrayEquals(lines.y2, copy.y2);
+            assertArrayEquals(lines.argb, copy.argb);
+        }
+    }
+
+    @Test
+    void compressedTreesAreSmaller() throws IOException {
+        RenderFile.Params p = params(FractalType.TREE, 200, 160, 12, 0.8);
+        FractalControl handle = finished(FractalGenerator.generate(p.type(), p.w(), p.h(), p.maxIter(),
+                p.angleDeg(), p.maxIter(), p.centerX(), p.centerY(), p.scale(), p.juliaRe(), p.juliaIm()));
+        Path raw = dir.resolve("raw.frac"), packed = dir.resolve("packed.frac");
+        RenderFile.write(raw, p, handle, false);
+        RenderFile.write(packed, p, handle, true);
+        assertTrue(Files.size(packed) < Files.size(raw));
+    }
+
+    @Test
+    void truncatedFilesAreRejected() throws IOException {
+        RenderFile.Params p = params(FractalType.MANDELBROT, 40, 30, 100, 3.0);
+        FractalControl handle = finished(FractalGenerator.generate(p.type(), p.w(), p.h(), 0, 0, p.maxIter(),
+                p.centerX(), p.centerY(), p.scale(), p.juliaRe(), p.juliaIm()));
+        Path file = dir.resolve("cut.frac");
+        RenderFile.write(file, p, handle, true);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertThrows(IOException.class, () -> RenderFile.read(file));
+    }
+
+    /** Overwrites the int at {@code offset} of the file. */
+    private static void patch(Path file, int offset, int value) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(offset, value);
+        Files.write(file, bytes);
+    }
+
+    @Test
+    void corruptHeadersAreRejectedBeforeAllocating() throws IOException {
+        RenderFile.Params p = params(FractalType.MANDELBROT, 40, 30, 100, 3.0);
+        FractalControl handle = finished(FractalGenerator.generate(p.type(), p.w(), p.h(), 0, 0, p.maxIter(),
+                p.centerX(), p.centerY(), p.scale(), p.juliaRe(), p.juliaIm()));
+        // magic, version, flags, type and tier come first
+        int width = 10, height = 14;
+        int[][] sizes = { { 0, 30 }, { 40, -1 }, { 65536, 65536 }, { 20000, 20000 } };
+
+        for (boolean compress : new boolean[] { false, true }) {
+            for (int[] size : sizes) {
+                Path file = dir.resolve("bad-" + compress + "-" + size[0] + "x" + size[1] + ".frac");
+                RenderFile.write(file, p, handle, compress);
+                patch(file, width, size[0]);
+                patch(file, height, size[1]);
+                assertThrows(IOException.class, () -> RenderFile.read(file), size[0] + "x" + size[1]);
+            }
+        }
+
+        // a tree whose depth claims far more lines than the file holds
+        RenderFile.Params t = params(FractalType.TREE, 200, 160, 8, 0.8);
+        FractalControl tree = finished(FractalGenerator.generate(t.type(), t.w(), t.h(), t.maxIter(),
+                t.angleDeg(), t.maxIter(), t.centerX(), t.centerY(), t.scale(), t.juliaRe(), t.juliaIm()));
+        int levels = width + 3 * 4 + 4 * 8 + 2 + t.centerX().toString().length() + 2 + t.centerY().toString().length();
+        for (boolean compress : new boolean[] { false, true }) {
+            Path file = dir.resolve("deep-" + compress + ".frac");
+            RenderFile.write(file, t, tree, compress);
+            assertEquals(8, ByteBuffer.wrap(Files.readAllBytes(file)).getInt(levels));
+            patch(file, levels, FractalGenerator.MAX_TREE_DEPTH);
+            assertThrows(IOException.class, () -> RenderFile.read(file));
+        }
+    }
+}
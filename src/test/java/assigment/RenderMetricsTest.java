@@ -0,0 +1,62 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalGenerator.FractalControl;
+import assigment.FractalAppExt.FractalGenerator.TileCache;
+import assigment.FractalAppExt.FractalType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Progress units count the work a render actually did, once each. */
+class RenderMetricsTest {
+
+    private final TileCache cache = FractalGenerator.tileCache();
+    private final boolean lod = FractalGenerator.treeLod();
+    private final boolean slow = FractalGenerator.slowMode();
+
+    @AfterEach
+    void restore() {
+        FractalGenerator.setTileCache(cache);
+        FractalGenerator.setTreeLod(lod);
+        FractalGenerator.setSlowMode(slow);
+    }
+
+    private static FractalControl finished(FractalControl handle) {
+        assertTrue(FractalAppExt.BatchRender.await(handle));
+        assertFalse(handle.dead());
+        return handle;
+    }
+
+    @Test
+    void everyPixelIsCountedOnce() {
+        FractalGenerator.setTileCache(new TileCache(64L << 20, null, 0));
+        int w = 640, h = 512;
+        // the second render is served from the cache, which must not count twice either
+        for (int render = 0; render < 2; render++) {
+            FractalControl handle = finished(FractalGenerator.generate(FractalType.MANDELBROT, w, h, 0, 0, 500,
+                    BigDecimal.valueOf(-0.5), BigDecimal.ZERO, 3.0, 0, 0));
+            FractalGenerator.RenderMetrics.Snapshot m = handle.metrics().snapshot();
+            assertEquals((long) w * h, m.totalUnits());
+            assertEquals((long) w * h, m.units(), "render " + render);
+        }
+    }
+
+    @Test
+    void treeUnitsCountOnlyTheLinesDrawn() {
+        FractalGenerator.setTreeLod(true);
+        FractalGenerator.setSlowMode(false);
+        FractalControl handle = finished(FractalGenerator.generate(FractalType.TREE, 320, 240, 24, 25, 0,
+                BigDecimal.ZERO, BigDecimal.ZERO, 0.8, 0, 0));
+        FractalGenerator.LineBuffer lines = handle.lines();
+        long drawn = lines.drawn();
+        FractalGenerator.RenderMetrics.Snapshot m = handle.metrics().snapshot();
+
+        assertTrue(drawn < lines.capacity(), "LOD should have skipped some slots at this depth");
+        assertEquals(lines.capacity(), m.totalUnits());
+        assertEquals(drawn, m.units());
+    }
+}
@@ -0,0 +1,91 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalGenerator.FractalControl;
+import assigment.FractalAppExt.FractalGenerator.RecordRing;
+import assigment.FractalAppExt.FractalGenerator.RenderScheduler;
+import assigment.FractalAppExt.FractalType;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchedulerTest {
+
+    @Test
+    void schedulerModeFallsBackToWorkStealing() {
+        assertEquals(RenderScheduler.Mode.WORK_STEALING, FractalGenerator.schedulerMode(null));
+        assertEquals(RenderScheduler.Mode.VIRTUAL, FractalGenerator.schedulerMode("virtual"));
+        assertEquals(RenderScheduler.Mode.VIRTUAL, FractalGenerator.schedulerMode(" Virtual "));
+        assertEquals(RenderScheduler.Mode.WORK_STEALING, FractalGenerator.schedulerMode("work-stealing"));
+        assertEquals(RenderScheduler.Mode.WORK_STEALING, FractalGenerator.schedulerMode(""));
+    }
+
+    /** A new render in the same lane kills the running one, which stops publishing and ends. */
+    @Test
+    void aSupersededRenderStopsPublishing() throws InterruptedException {
+        boolean slow = FractalGenerator.slowMode(), lod = FractalGenerator.treeLod();
+        FractalGenerator.setSlowMode(true);
+        FractalGenerator.setTreeLod(false);
+        try {
+            // slow mode draws one branch per pause, so 4095 branches would take minutes
+            FractalControl old = FractalGenerator.generate(FractalType.TREE, 320, 240, 12, 25, 0,
+                    BigDecimal.ZERO, BigDecimal.ZERO, 0.7, 0, 0);
+            while (old.metrics().snapshot().units() == 0) {
+                FractalGenerator.update(old, r -> {});
+                Thread.sleep(5);
+            }
+
+            FractalControl next = FractalGenerator.generate(FractalType.MANDELBROT, 64, 48, 0, 0, 100,
+                    BigDecimal.valueOf(-0.5), BigDecimal.ZERO, 3.0, 0, 0);
+            assertTrue(old.dead());
+            assertFalse(next.dead());
+
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> FractalAppExt.BatchRender.await(old));
+            long units = old.metrics().snapshot().units();
+            assertTrue(units < old.metrics().snapshot().totalUnits(), "the old render ran to the end");
+
+            Thread.sleep(300);
+            assertEquals(0, FractalGenerator.update(old, r -> fail("published after it ended")));
+            assertEquals(units, old.metrics().snapshot().units());
+
+            assertTrue(FractalAppExt.BatchRender.await(next));
+            assertFalse(next.dead());
+            assertEquals(64L * 48, next.metrics().snapshot().units());
+        } finally {
+            FractalGenerator.setSlowMode(slow);
+            FractalGenerator.setTreeLod(lod);
+        }
+    }
+
+    /** A producer waiting on a full ring drops its record once its render's epoch is stale. */
+    @Test
+    void aStaleProducerDropsItsRecord() throws InterruptedException {
+        for (RecordRing.Backpressure mode : List.of(RecordRing.Backpressure.BLOCK, RecordRing.Backpressure.SPIN_THEN_PARK)) {
+            RecordRing ring = new RecordRing(4, mode);
+            for (long r = 0; r < 4; r++) ring.offer(r);
+
+            AtomicBoolean stale = new AtomicBoolean();
+            Thread producer = new Thread(() -> {
+                try { ring.offer(99, stale::get); } catch (InterruptedException ignored) {}
+            });
+            producer.start();
+            while (ring.waits() == 0) Thread.onSpinWait();
+
+            stale.set(true);
+            producer.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(producer.isAlive(), mode + ": producer still waiting");
+
+            List<Long> seen = new ArrayList<>();
+            ring.drain(seen::add);
+            assertEquals(List.of(0L, 1L, 2L, 3L), seen, mode.toString());
+            assertEquals(0, ring.size(), mode.toString());
+        }
+    }
+}
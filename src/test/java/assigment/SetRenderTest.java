@@ -0,0 +1,94 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalGenerator.FractalControl;
+import assigment.FractalAppExt.FractalGenerator.TileCache;
+import assigment.FractalAppExt.FractalType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Shortcuts of the set renderer must not change a single pixel: each render
+ * here is compared against the same frame rendered the plain way. The tile
+ * cache is off, so every render really iterates.
+ */
+class SetRenderTest {
+
+    private static final int W = 320, H = 240, MAX_ITER = 800;
+    /** The Douady rabbit, a connected Julia set. */
+    private static final double RABBIT_RE = -0.123, RABBIT_IM = 0.745;
+
+    private final TileCache cache = FractalGenerator.tileCache();
+
+    @BeforeEach
+    void noCache() { FractalGenerator.setTileCache(null); }
+
+    @AfterEach
+    void restore() {
+        FractalGenerator.setTileCache(cache);
+        FractalGenerator.setMarianiSilver(false);
+        FractalGenerator.setVectorKernel(true);
+        FractalGenerator.setMinPrecision(FractalGenerator.Precision.FLOAT);
+    }
+
+    private static int[] render(FractalType type, String cx, String cy, double scale, double jr, double ji) {
+        FractalControl handle = FractalGenerator.generate(type, W, H, 0, 0, MAX_ITER,
+                new BigDecimal(cx), new BigDecimal(cy), scale, jr, ji);
+        assertTrue(FractalAppExt.BatchRender.await(handle));
+        assertFalse(handle.dead());
+        return handle.pixels();
+    }
+
+    private static void assertSameFrame(int[] expected, int[] actual, String what) {
+        int differing = 0;
+        for (int i = 0; i < expected.length; i++) if (expected[i] != actual[i]) differing++;
+        assertEquals(0, differing, what + ": pixels differing");
+    }
+
+    @Test
+    void marianiSilverMatchesThePerPixelRender() {
+        Object[][] views = {
+                { FractalType.MANDELBROT, "-0.5", "0", 3.0 },
+                { FractalType.MANDELBROT, "-0.1592", "1.0317", 0.05 },
+                { FractalType.JULIA, "0", "0", 3.0 },
+        };
+        for (Object[] v : views) {
+            FractalType type = (FractalType) v[0];
+            double scale = (Double) v[3];
+            FractalGenerator.setMarianiSilver(false);
+            int[] plain = render(type, (String) v[1], (String) v[2], scale, RABBIT_RE, RABBIT_IM);
+            FractalGenerator.setMarianiSilver(true);
+            int[] subdivided = render(type, (String) v[1], (String) v[2], scale, RABBIT_RE, RABBIT_IM);
+            assertSameFrame(plain, subdivided, type + " at " + scale);
+        }
+    }
+
+    @Test
+    void vectorKernelMatchesTheScalarKernel() {
+        assertTrue(FractalGenerator.vectorKernelAvailable(), "tests run with jdk.incubator.vector");
+        Object[][] views = {
+                { FractalType.MANDELBROT, "-0.5", "0", 3.0, FractalGenerator.Precision.FLOAT },
+                { FractalType.MANDELBROT, "-0.5", "0", 3.0, FractalGenerator.Precision.DOUBLE },
+                { FractalType.MANDELBROT, "-0.743643887", "0.131825904", 1e-7, FractalGenerator.Precision.DOUBLE },
+                { FractalType.JULIA, "0", "0", 3.0, FractalGenerator.Precision.DOUBLE },
+        };
+        for (Object[] v : views) {
+            FractalType type = (FractalType) v[0];
+            double scale = (Double) v[3];
+            FractalGenerator.Precision tier = (FractalGenerator.Precision) v[4];
+            FractalGenerator.setMinPrecision(tier);
+            assertEquals(tier, FractalGenerator.precision(type, scale, W, H));
+
+            FractalGenerator.setVectorKernel(false);
+            int[] scalar = render(type, (String) v[1], (String) v[2], scale, RABBIT_RE, RABBIT_IM);
+            FractalGenerator.setVectorKernel(true);
+            int[] vector = render(type, (String) v[1], (String) v[2], scale, RABBIT_RE, RABBIT_IM);
+            assertSameFrame(scalar, vector, type + " at " + scale + " in " + tier);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package assigment;
+
+import assigment.FractalAppExt.FractalGenerator;
+import assigment.FractalAppExt.FractalGenerator.Precision;
+import assigment.FractalAppExt.FractalGenerator.TileCache;
+import assigment.FractalAppExt.FractalGenerator.TileKey;
+import assigment.FractalAppExt.FractalType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TileCacheTest {
+
+    /** Bytes of one 64 x 64 tile of floats. */
+    private static final long TILE_BYTES = 64 * 64 * Float.BYTES;
+
+    @TempDir Path dir;
+
+    private static TileKey key(long tx) {
+        return new TileKey(FractalType.MANDELBROT, 0, 0, 500, Precision.DOUBLE, 0.01, tx, 0);
+    }
+
+    private static float[] tile(float value) {
+        float[] t = new float[64 * 64];
+        Arrays.fill(t, value);
+        t[0] = -value;
+        return t;
+    }
+
+    private long spilledFiles() throws IOException {
+        if (!Files.isDirectory(dir)) return 0;
+        try (Stream<Path> files = Files.list(dir)) { return files.count(); }
+    }
+
+    @Test
+    void leastRecentlyUsedTileIsEvictedFirst() {
+        TileCache cache = new TileCache(2 * TILE_BYTES, null, 0);
+        cache.put(key(1), tile(1));
+        cache.put(key(2), tile(2));
+        assertNotNull(cache.get(key(1)));       // 2 is now the least recently used
+        cache.put(key(3), tile(3));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictions());
+        assertNull(cache.get(key(2)));
+        assertArrayEquals(tile(1), cache.get(key(1)));
+        assertArrayEquals(tile(3), cache.get(key(3)));
+
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(0, cache.diskHits());
+    }
+
+    @Test
+    void evictedTilesAreSpilledAndReadBack() throws IOException {
+        TileCache cache = new TileCache(2 * TILE_BYTES, dir, 8);
+        for (long tx = 1; tx <= 3; tx++) cache.put(key(tx), tile(tx));
+        assertEquals(1, cache.spilledSize());
+        assertEquals(1, spilledFiles());
+
+        // reading tile 1 back from disk puts it in memory again and spills tile 2 in its place
+        assertArrayEquals(tile(1), cache.get(key(1)));
+        assertEquals(1, cache.diskHits());
+        assertEquals(0, cache.misses());
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.spilledSize());
+        assertEquals(1, spilledFiles());
+
+        assertArrayEquals(tile(2), cache.get(key(2)));
+        assertEquals(2, cache.diskHits());
+        assertNull(cache.get(key(4)));
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void spilledTilesAreBoundedToo() throws IOException {
+        TileCache cache = new TileCache(TILE_BYTES, dir, 2);
+        for (long tx = 1; tx <= 5; tx++) cache.put(key(tx), tile(tx));
+        assertEquals(2, cache.spilledSize());
+        assertEquals(2, spilledFiles());
+
+        // the oldest spills were deleted; the newest two are still there
+        assertNull(cache.get(key(1)));
+        assertNull(cache.get(key(2)));
+        assertArrayEquals(tile(3), cache.get(key(3)));
+        assertArrayEquals(tile(4), cache.get(key(4)));
+    }
+
+    /** Progressive renders look every tile up once, not once per pass. */
+    @Test
+    void eachTileIsLookedUpOncePerRender() {
+        TileCache shared = FractalGenerator.tileCache();
+        TileCache cache = new TileCache(64L << 20, null, 0);
+        FractalGenerator.setTileCache(cache);
+        try {
+            BigDecimal x = BigDecimal.valueOf(-0.5), y = BigDecimal.ZERO;
+            render(x, y);
+            long tiles = cache.misses();
+            assertEquals(0, cache.hits());
+            assertTrue(tiles > 0);
+
+            render(x, y);
+            assertEquals(2 * tiles, cache.hits() + cache.misses());
+            assertEquals(cache.size(), cache.hits(), "the re-render hits every whole tile the first one stored");
+        } finally {
+            FractalGenerator.setTileCache(shared);
+        }
+    }
+
+    private static void render(BigDecimal x, BigDecimal y) {
+        FractalGenerator.FractalControl handle = FractalGenerator.generate(FractalType.MANDELBROT, 640, 512, 0, 0, 500,
+                x, y, 3.0, 0, 0);
+        assertTrue(FractalAppExt.BatchRender.await(handle));
+        assertFalse(handle.dead());
+    }
+}